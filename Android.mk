@@ -16,3 +16,5 @@
 #
 #include $(BUILD_STATIC_JAVA_LIBRARY)
 
+# host side modules, benchmarks/ and tests/
+include $(call all-makefiles-under,$(call my-dir))
@@ -0,0 +1,24 @@
+LOCAL_PATH:= $(call my-dir)
+
+include $(CLEAR_VARS)
+
+# Offline Pulse benchmarks. Replays recorded or synthetic FFT captures
+# through the Pulse data path on the host JVM. Run with:
+#   java -jar $(ANDROID_HOST_OUT)/framework/PulseBenchmarks.jar --help
+
+NAV_SRC := ../src/com/android/systemui/navigation
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src) \
+    $(NAV_SRC)/pulse/BandMap.java \
+    $(NAV_SRC)/pulse/BarIntegrator.java \
+    $(NAV_SRC)/pulse/FFTFrameBuffer.java \
+    $(NAV_SRC)/pulse/FFTProcessor.java \
+    $(NAV_SRC)/pulse/StreamValidator.java
+
+LOCAL_JAR_MANIFEST := manifest.txt
+
+LOCAL_MODULE_TAGS := optional
+
+LOCAL_MODULE := PulseBenchmarks
+
+include $(BUILD_HOST_JAVA_LIBRARY)
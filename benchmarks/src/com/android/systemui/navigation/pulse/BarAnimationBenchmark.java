@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SolidLineRenderer bar motion, one ValueAnimator per bar against the
+ * single BarIntegrator pass. ValueAnimator does not run off device, so
+ * the per bar animators are modelled: every capture cancels and restarts
+ * each one with fresh keyframes, and every vsync each running animator
+ * interpolates and calls its listener, which posts an invalidate. One
+ * benchmark frame is one capture plus the vsyncs until the next one
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class BarAnimationBenchmark implements PulseBenchmark.Benchmark {
+    private static final int[] BAR_COUNTS = { 16, 32, 64 };
+    private static final long VSYNC_NANOS = 16666667L;
+    private static final int BAR_BREADTH = 48;
+    private static final int DB_FUZZ_FACTOR = 4;
+    // SolidLineRenderer's old animator duration
+    private static final long ANIMATOR_NANOS = 128000000L;
+    // captures mapped to targets up front, so only bar motion is timed
+    private static final int TARGET_FRAMES = 256;
+
+    @Override
+    public void run(PulseBenchmark.Options options, PrintStream out) throws IOException {
+        final FFTFrameSource source = options.openSource();
+        final FrameTimer timer = new FrameTimer(options.frames);
+        final long period = options.getFramePeriodNanos();
+        final int vsyncs = (int) Math.max(1, (period + VSYNC_NANOS / 2) / VSYNC_NANOS);
+
+        for (int bars : BAR_COUNTS) {
+            source.rewind();
+            final float[][] targets = mapTargets(source, bars);
+            final AnimatorBars before = new AnimatorBars(targets, bars, vsyncs);
+            PulseBenchmark.runFrames(options, timer, before);
+            timer.report(out, "bars per bar animators, " + bars + " bars");
+            out.println("    invalidates/frame=" + before.getInvalidatesPerFrame());
+            final long beforeNanos = timer.getMeanNanos();
+
+            final IntegratorBars after = new IntegratorBars(targets, bars, vsyncs);
+            PulseBenchmark.runFrames(options, timer, after);
+            timer.report(out, "bars integrator, " + bars + " bars");
+            out.println("    invalidates/frame=" + after.getInvalidatesPerFrame());
+            out.println(String.format("    integrator speedup %.1fx",
+                    (float) beforeNanos / Math.max(1, timer.getMeanNanos())));
+        }
+    }
+
+    /**
+     * Bar targets per capture, as SolidLineRenderer.onFFTUpdate() maps them
+     */
+    private static float[][] mapTargets(FFTFrameSource source, int bars) {
+        final FFTProcessor fft = new FFTProcessor();
+        final BandMap bandMap = new BandMap();
+        final float[][] targets = new float[TARGET_FRAMES][bars];
+        for (int f = 0; f < TARGET_FRAMES; f++) {
+            fft.process(source.next());
+            bandMap.update(fft.getBinCount(), bars, BandMap.SCALE_LOG);
+            bandMap.reduce(fft.getDbValues(), targets[f], BandMap.REDUCE_MAX);
+            for (int i = 0; i < bars; i++) {
+                targets[f][i] = BAR_BREADTH - (int) targets[f][i] * DB_FUZZ_FACTOR;
+            }
+        }
+        return targets;
+    }
+
+    private static abstract class BarPath implements Runnable {
+        protected final int mBars;
+        protected final int mVsyncs;
+        protected long mNowNanos;
+        private final float[][] mTargets;
+        private long mFrames;
+        private long mInvalidates;
+
+        BarPath(float[][] targets, int bars, int vsyncs) {
+            mTargets = targets;
+            mBars = bars;
+            mVsyncs = vsyncs;
+        }
+
+        @Override
+        public void run() {
+            onTargets(mTargets[(int) (mFrames % mTargets.length)]);
+            for (int v = 0; v < mVsyncs; v++) {
+                mNowNanos += VSYNC_NANOS;
+                onVsync();
+            }
+            mFrames++;
+        }
+
+        protected void postInvalidate() {
+            mInvalidates++;
+        }
+
+        long getInvalidatesPerFrame() {
+            return mFrames == 0 ? 0 : mInvalidates / mFrames;
+        }
+
+        protected abstract void onTargets(float[] targets);
+
+        protected abstract void onVsync();
+    }
+
+    private static class AnimatorBars extends BarPath {
+        private final AnimatorModel[] mAnimators;
+        private final float[] mPoints;
+
+        AnimatorBars(float[][] targets, int bars, int vsyncs) {
+            super(targets, bars, vsyncs);
+            mPoints = new float[bars * 4];
+            mAnimators = new AnimatorModel[bars];
+            for (int i = 0; i < bars; i++) {
+                final int j = i * 4 + 1;
+                mAnimators[i] = new AnimatorModel(new UpdateListener() {
+                    @Override
+                    public void onAnimationUpdate(float value) {
+                        mPoints[j] = value;
+                        postInvalidate();
+                    }
+                });
+            }
+        }
+
+        @Override
+        protected void onTargets(float[] targets) {
+            for (int i = 0; i < mBars; i++) {
+                mAnimators[i].cancel();
+                mAnimators[i].setFloatValues(mPoints[i * 4 + 1], targets[i]);
+                mAnimators[i].start(mNowNanos);
+            }
+        }
+
+        @Override
+        protected void onVsync() {
+            // AnimationHandler walks every registered animator
+            for (int i = 0; i < mBars; i++) {
+                mAnimators[i].doAnimationFrame(mNowNanos);
+            }
+        }
+    }
+
+    private static class IntegratorBars extends BarPath {
+        private final BarIntegrator mIntegrator = new BarIntegrator();
+        private final float[] mPoints;
+        private boolean mFramePending;
+
+        IntegratorBars(float[][] targets, int bars, int vsyncs) {
+            super(targets, bars, vsyncs);
+            mPoints = new float[bars * 4];
+            mIntegrator.setCount(bars);
+            mIntegrator.setAttackDecay(30, 90);
+        }
+
+        @Override
+        protected void onTargets(float[] targets) {
+            for (int i = 0; i < mBars; i++) {
+                mIntegrator.setTarget(i, targets[i]);
+            }
+            requestFrame();
+        }
+
+        @Override
+        protected void onVsync() {
+            // draw() steps once and asks for another frame only while moving
+            if (mFramePending) {
+                mFramePending = false;
+                if (mIntegrator.step(mNowNanos, true, mPoints, 1, 4)) {
+                    requestFrame();
+                }
+            }
+        }
+
+        private void requestFrame() {
+            if (!mFramePending) {
+                mFramePending = true;
+                postInvalidate();
+            }
+        }
+    }
+
+    private interface UpdateListener {
+        public void onAnimationUpdate(float value);
+    }
+
+    /**
+     * What one ValueAnimator with float values does per restart and per
+     * vsync: new keyframes on setFloatValues(), an interpolated fraction
+     * and a listener callback on every frame while running
+     */
+    private static class AnimatorModel {
+        private final UpdateListener mListener;
+        private float[] mKeyframes;
+        private long mStartNanos;
+        private boolean mRunning;
+
+        AnimatorModel(UpdateListener listener) {
+            mListener = listener;
+        }
+
+        void setFloatValues(float from, float to) {
+            mKeyframes = new float[] { from, to };
+        }
+
+        void start(long nowNanos) {
+            mStartNanos = nowNanos;
+            mRunning = true;
+        }
+
+        void cancel() {
+            mRunning = false;
+        }
+
+        void doAnimationFrame(long nowNanos) {
+            if (!mRunning) {
+                return;
+            }
+            float fraction = (nowNanos - mStartNanos) / (float) ANIMATOR_NANOS;
+            if (fraction >= 1f) {
+                fraction = 1f;
+                mRunning = false;
+            }
+            // AccelerateDecelerateInterpolator, the ValueAnimator default
+            final float interpolated = (float) (Math.cos((fraction + 1) * Math.PI) / 2) + 0.5f;
+            mListener.onAnimationUpdate(mKeyframes[0]
+                    + (mKeyframes[1] - mKeyframes[0]) * interpolated);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * FFT captures laid out the way the Visualizer hands them over, two
+ * signed bytes (real, imaginary) per bin. Either synthetic, a short run
+ * of silence and then music shaped noise with a falling spectrum and a
+ * moving beat, or a recording of raw captures stored back to back. Frames
+ * are generated up front and handed out in a loop, nothing per frame
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+public class FFTFrameSource {
+    // distinct synthetic frames, enough to keep branch predictors honest
+    private static final int SYNTHETIC_FRAMES = 256;
+    // leading silent frames so stream validation has something to reject
+    private static final int SILENT_FRAMES = 8;
+
+    private final byte[][] mFrames;
+    private int mNext;
+
+    private FFTFrameSource(byte[][] frames) {
+        mFrames = frames;
+    }
+
+    /**
+     * @param captureSize - bytes per capture, twice the bin count
+     */
+    public static FFTFrameSource synthetic(int captureSize, long seed) {
+        final Random random = new Random(seed);
+        final int bins = captureSize / 2;
+        final byte[][] frames = new byte[SYNTHETIC_FRAMES][captureSize];
+        for (int f = SILENT_FRAMES; f < SYNTHETIC_FRAMES; f++) {
+            // a kick every 16 frames, decaying in between
+            final float beat = 1f - (f % 16) / 16f;
+            for (int k = 1; k < bins; k++) {
+                // pink-ish: amplitude falls with frequency, bass follows the beat
+                final float tilt = 1f / (float) Math.sqrt(k);
+                final float level = 127f * tilt * (k < bins / 16 ? 0.4f + 0.6f * beat : 0.7f);
+                final float magnitude = level * random.nextFloat();
+                final double phase = random.nextDouble() * 2 * Math.PI;
+                frames[f][k * 2] = clamp(magnitude * Math.cos(phase));
+                frames[f][k * 2 + 1] = clamp(magnitude * Math.sin(phase));
+            }
+        }
+        return new FFTFrameSource(frames);
+    }
+
+    /**
+     * Raw captures as delivered to onFftDataCapture(), written back to back
+     * into one file. A trailing partial capture is ignored
+     */
+    public static FFTFrameSource recording(File file, int captureSize) throws IOException {
+        final int count = (int) (file.length() / captureSize);
+        if (count == 0) {
+            throw new IOException(file + " holds no complete " + captureSize + " byte capture");
+        }
+        final byte[][] frames = new byte[count][captureSize];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int f = 0; f < count; f++) {
+                int read = 0;
+                while (read < captureSize) {
+                    final int n = in.read(frames[f], read, captureSize - read);
+                    if (n < 0) {
+                        throw new IOException("short read in " + file);
+                    }
+                    read += n;
+                }
+            }
+        }
+        return new FFTFrameSource(frames);
+    }
+
+    /**
+     * @return the next capture. The array is shared, like the Visualizer's
+     */
+    public byte[] next() {
+        final byte[] frame = mFrames[mNext];
+        mNext = (mNext + 1) % mFrames.length;
+        return frame;
+    }
+
+    public void rewind() {
+        mNext = 0;
+    }
+
+    public int getCaptureSize() {
+        return mFrames[0].length;
+    }
+
+    private static byte clamp(double value) {
+        return (byte) Math.max(-128, Math.min(127, Math.round(value)));
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * FFTProcessor's magnitude to dB lookup table against the per bin
+ * Math.log10 the renderers used to run on every capture
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class FFTLutBenchmark implements PulseBenchmark.Benchmark {
+    // keeps the JIT from dropping the work
+    static volatile float sSink;
+
+    @Override
+    public void run(PulseBenchmark.Options options, PrintStream out) throws IOException {
+        final FFTFrameSource source = options.openSource();
+        final FrameTimer timer = new FrameTimer(options.frames);
+        final int bins = source.getCaptureSize() / 2;
+
+        final FFTProcessor processor = new FFTProcessor();
+        PulseBenchmark.runFrames(options, timer, new Runnable() {
+            @Override
+            public void run() {
+                processor.process(source.next());
+                sSink = processor.getDbValues()[bins / 2];
+            }
+        });
+        timer.report(out, "fft lookup table, " + bins + " bins");
+        final long lutNanos = timer.getMeanNanos();
+
+        source.rewind();
+        final float[] db = new float[bins];
+        PulseBenchmark.runFrames(options, timer, new Runnable() {
+            @Override
+            public void run() {
+                final byte[] fft = source.next();
+                int rfk, ifk, magnitude;
+                for (int k = 0; k < bins; k++) {
+                    rfk = fft[k * 2];
+                    ifk = fft[k * 2 + 1];
+                    magnitude = rfk * rfk + ifk * ifk;
+                    db[k] = magnitude > 0 ? (float) (10 * Math.log10(magnitude)) : 0;
+                }
+                sSink = db[bins / 2];
+            }
+        });
+        timer.report(out, "fft per bin log10, " + bins + " bins");
+        out.println(String.format("    lookup table speedup %.1fx",
+                (float) timer.getMeanNanos() / Math.max(1, lutNanos)));
+    }
+}
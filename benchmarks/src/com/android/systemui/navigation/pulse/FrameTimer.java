@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Per frame CPU time, plus allocations and GC activity over a whole run,
+ * all for the calling thread. Frame times go into a preallocated array so
+ * measuring does not allocate on its own
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+public class FrameTimer {
+    private final ThreadMXBean mThreads = ManagementFactory.getThreadMXBean();
+    private final List<GarbageCollectorMXBean> mCollectors =
+            ManagementFactory.getGarbageCollectorMXBeans();
+    private final long[] mFrameNanos;
+    private int mFrames;
+    private long mFrameStart;
+
+    private long mWallStart;
+    private long mWallNanos;
+    private long mAllocStart;
+    private long mAllocBytes;
+    private long mGcCountStart;
+    private long mGcCount;
+    private long mGcTimeStart;
+    private long mGcMillis;
+
+    public FrameTimer(int maxFrames) {
+        mFrameNanos = new long[maxFrames];
+    }
+
+    public void start() {
+        mFrames = 0;
+        mGcCountStart = gcCount();
+        mGcTimeStart = gcMillis();
+        mAllocStart = allocatedBytes();
+        mWallStart = System.nanoTime();
+    }
+
+    public void beginFrame() {
+        mFrameStart = mThreads.getCurrentThreadCpuTime();
+    }
+
+    public void endFrame() {
+        mFrameNanos[mFrames++] = mThreads.getCurrentThreadCpuTime() - mFrameStart;
+    }
+
+    public void stop() {
+        mWallNanos = System.nanoTime() - mWallStart;
+        mAllocBytes = mAllocStart < 0 ? -1 : allocatedBytes() - mAllocStart;
+        mGcCount = gcCount() - mGcCountStart;
+        mGcMillis = gcMillis() - mGcTimeStart;
+    }
+
+    public int getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return mean CPU time per frame in nanoseconds
+     */
+    public long getMeanNanos() {
+        long total = 0;
+        for (int i = 0; i < mFrames; i++) {
+            total += mFrameNanos[i];
+        }
+        return mFrames == 0 ? 0 : total / mFrames;
+    }
+
+    public void report(PrintStream out, String name) {
+        final long[] sorted = Arrays.copyOf(mFrameNanos, mFrames);
+        Arrays.sort(sorted);
+        out.println(name + ": frames=" + mFrames
+                + " wall=" + mWallNanos / 1000000 + "ms");
+        out.println("    cpu/frame avg=" + micros(getMeanNanos())
+                + " p50=" + micros(percentile(sorted, 50))
+                + " p90=" + micros(percentile(sorted, 90))
+                + " p99=" + micros(percentile(sorted, 99))
+                + " max=" + micros(mFrames == 0 ? 0 : sorted[mFrames - 1]));
+        out.println("    alloc total=" + (mAllocBytes < 0 ? "n/a" : mAllocBytes + "B")
+                + " perFrame=" + (mAllocBytes < 0 || mFrames == 0 ? "n/a"
+                        : mAllocBytes / mFrames + "B")
+                + " gc count=" + mGcCount + " time=" + mGcMillis + "ms");
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.2fus", nanos / 1000f);
+    }
+
+    // HotSpot only, -1 where the VM cannot tell
+    private long allocatedBytes() {
+        if (mThreads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mThreads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : mCollectors) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : mCollectors) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Command line entry of the offline Pulse benchmarks. Each benchmark
+ * replays FFT captures through part of the Pulse data path and reports
+ * per frame CPU time, allocations and GC activity, so changes can be
+ * compared on a plain Linux box without a phone playing music
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+public class PulseBenchmark {
+    public interface Benchmark {
+        public void run(Options options, PrintStream out) throws IOException;
+    }
+
+    public static class Options {
+        // Visualizer.getCaptureSizeRange()[1] and getMaxCaptureRate() on most devices
+        public int captureSize = 1024;
+        public int rateMilliHz = 20000;
+        public int frames = 2000;
+        public int warmupFrames = 500;
+        public int bars = 32;
+        public long seed = 1;
+        // sleep between frames to run at the capture rate instead of flat out
+        public boolean realtime;
+        public File recording;
+
+        public FFTFrameSource openSource() throws IOException {
+            return recording != null ? FFTFrameSource.recording(recording, captureSize)
+                    : FFTFrameSource.synthetic(captureSize, seed);
+        }
+
+        public long getFramePeriodNanos() {
+            return 1000000000000L / rateMilliHz;
+        }
+    }
+
+    private static final Map<String, Benchmark> BENCHMARKS =
+            new LinkedHashMap<String, Benchmark>();
+
+    static {
+        BENCHMARKS.put("stream", new StreamReplayBenchmark());
+        BENCHMARKS.put("lut", new FFTLutBenchmark());
+        BENCHMARKS.put("bars", new BarAnimationBenchmark());
+    }
+
+    /**
+     * Run frames through one step, timing only the measured frames. Warmup
+     * frames run flat out so the JIT settles first
+     */
+    public static void runFrames(Options options, FrameTimer timer, Runnable frame) {
+        for (int i = 0; i < options.warmupFrames; i++) {
+            frame.run();
+        }
+        final long period = options.getFramePeriodNanos();
+        long next = System.nanoTime();
+        timer.start();
+        for (int i = 0; i < options.frames; i++) {
+            timer.beginFrame();
+            frame.run();
+            timer.endFrame();
+            if (options.realtime) {
+                next += period;
+                final long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+        }
+        timer.stop();
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Options options = new Options();
+        final Set<String> selected = new HashSet<String>();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("--capture-size".equals(arg)) {
+                options.captureSize = Integer.parseInt(args[++i]);
+            } else if ("--rate".equals(arg)) {
+                options.rateMilliHz = Integer.parseInt(args[++i]);
+            } else if ("--frames".equals(arg)) {
+                options.frames = Integer.parseInt(args[++i]);
+            } else if ("--warmup".equals(arg)) {
+                options.warmupFrames = Integer.parseInt(args[++i]);
+            } else if ("--bars".equals(arg)) {
+                options.bars = Integer.parseInt(args[++i]);
+            } else if ("--seed".equals(arg)) {
+                options.seed = Long.parseLong(args[++i]);
+            } else if ("--realtime".equals(arg)) {
+                options.realtime = true;
+            } else if ("--recording".equals(arg)) {
+                options.recording = new File(args[++i]);
+            } else if ("--help".equals(arg)) {
+                usage(System.out);
+                return;
+            } else if (BENCHMARKS.containsKey(arg)) {
+                selected.add(arg);
+            } else {
+                System.err.println("unknown argument " + arg);
+                usage(System.err);
+                System.exit(1);
+            }
+        }
+        final PrintStream out = System.out;
+        out.println("captureSize=" + options.captureSize + " rate=" + options.rateMilliHz
+                + "mHz frames=" + options.frames + " warmup=" + options.warmupFrames
+                + " bars=" + options.bars + " realtime=" + options.realtime
+                + " source=" + (options.recording != null ? options.recording : "synthetic"));
+        for (Map.Entry<String, Benchmark> entry : BENCHMARKS.entrySet()) {
+            if (selected.isEmpty() || selected.contains(entry.getKey())) {
+                out.println();
+                entry.getValue().run(options, out);
+            }
+        }
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("usage: PulseBenchmark [options] [benchmark...]");
+        out.println("  --capture-size <bytes>  FFT capture size, default 1024");
+        out.println("  --rate <mHz>            capture rate, default 20000");
+        out.println("  --frames <n>            measured frames per run, default 2000");
+        out.println("  --warmup <n>            unmeasured frames first, default 500");
+        out.println("  --bars <n>              bars for the bar renderers, default 32");
+        out.println("  --seed <n>              synthetic stream seed, default 1");
+        out.println("  --realtime              pace frames at the capture rate");
+        out.println("  --recording <file>      raw captures back to back instead of synthetic");
+        out.println("benchmarks, all by default: " + BENCHMARKS.keySet());
+    }
+}
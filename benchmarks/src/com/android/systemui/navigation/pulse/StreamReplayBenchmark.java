@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Replay captures through what VisualizerStreamHandler and PulseController
+ * do per frame, validation and publishing on the analysis side, then
+ * consuming the frame and running a renderer's FFT update on the main
+ * side. The renderer updates mirror FadingBlockRenderer and
+ * SolidLineRenderer minus the Canvas calls, which need a device
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class StreamReplayBenchmark implements PulseBenchmark.Benchmark {
+    // a phone navigation bar in pixels
+    private static final int BAR_LENGTH = 1080;
+    private static final int BAR_BREADTH = 48;
+    // renderer defaults from settings and config
+    private static final int DIVISIONS = 16;
+    private static final int DB_FUZZ_FACTOR = 4;
+    private static final int DB_FUZZ = 2;
+
+    @Override
+    public void run(PulseBenchmark.Options options, PrintStream out) throws IOException {
+        final FFTFrameSource source = options.openSource();
+        final FrameTimer timer = new FrameTimer(options.frames);
+
+        PulseBenchmark.runFrames(options, timer, new StreamPath(source, new FadingUpdate()));
+        timer.report(out, "stream fading block, " + FadingUpdate.LINES + " lines");
+
+        source.rewind();
+        PulseBenchmark.runFrames(options, timer,
+                new StreamPath(source, new SolidUpdate(options.bars)));
+        timer.report(out, "stream solid line, " + options.bars + " bars");
+    }
+
+    private interface RendererUpdate {
+        public void onFFTUpdate(FFTProcessor fft);
+    }
+
+    /**
+     * One capture callback plus the main thread frame it triggers
+     */
+    private static class StreamPath implements Runnable {
+        private final FFTFrameSource mSource;
+        private final RendererUpdate mRenderer;
+        private final StreamValidator mValidator = new StreamValidator(32, 1, 64, 3);
+        private final FFTFrameBuffer mFrameBuffer = new FFTFrameBuffer();
+        private boolean mValidated;
+
+        StreamPath(FFTFrameSource source, RendererUpdate renderer) {
+            mSource = source;
+            mRenderer = renderer;
+        }
+
+        @Override
+        public void run() {
+            // analysis thread, VisualizerStreamHandler capture listener
+            final byte[] fft = mSource.next();
+            if (!mValidated) {
+                mValidated = mValidator.onFrame(fft) == StreamValidator.RESULT_VALID;
+                return;
+            }
+            mFrameBuffer.publish(fft);
+            // main thread, PulseController frame runnable
+            if (mFrameBuffer.consume()) {
+                mRenderer.onFFTUpdate(mFrameBuffer.getFront());
+            }
+        }
+    }
+
+    /**
+     * FadingBlockRenderer with log bands: one band per line on the bar
+     */
+    private static class FadingUpdate implements RendererUpdate {
+        static final int LINES = BAR_LENGTH / (4 * DIVISIONS) + 1;
+
+        private final BandMap mBandMap = new BandMap();
+        private final float[] mBandValues = new float[LINES];
+        private final float[] mPoints = new float[LINES * 4];
+
+        @Override
+        public void onFFTUpdate(FFTProcessor fft) {
+            mBandMap.update(fft.getBinCount(), LINES, BandMap.SCALE_LOG);
+            mBandMap.reduce(fft.getDbValues(), mBandValues, BandMap.REDUCE_MAX);
+            for (int i = 0; i < LINES; i++) {
+                final int length = (int) mBandValues[i] * DB_FUZZ_FACTOR + DB_FUZZ;
+                mPoints[i * 4] = i * 4 * DIVISIONS;
+                mPoints[i * 4 + 1] = BAR_BREADTH;
+                mPoints[i * 4 + 2] = i * 4 * DIVISIONS;
+                mPoints[i * 4 + 3] = BAR_BREADTH - length;
+            }
+        }
+    }
+
+    /**
+     * SolidLineRenderer with log bands, targets plus the integrator step
+     * its draw() runs
+     */
+    private static class SolidUpdate implements RendererUpdate {
+        private final int mUnits;
+        private final BandMap mBandMap = new BandMap();
+        private final float[] mBandValues;
+        private final float[] mPoints;
+        private final BarIntegrator mIntegrator = new BarIntegrator();
+        private long mNowNanos;
+
+        SolidUpdate(int units) {
+            mUnits = units;
+            mBandValues = new float[units];
+            mPoints = new float[units * 4];
+            mIntegrator.setCount(units);
+            mIntegrator.setAttackDecay(30, 90);
+        }
+
+        @Override
+        public void onFFTUpdate(FFTProcessor fft) {
+            mBandMap.update(fft.getBinCount(), mUnits, BandMap.SCALE_LOG);
+            mBandMap.reduce(fft.getDbValues(), mBandValues, BandMap.REDUCE_MAX);
+            for (int i = 0; i < mUnits; i++) {
+                mIntegrator.setTarget(i, BAR_BREADTH - (int) mBandValues[i] * DB_FUZZ_FACTOR);
+            }
+            // one vsync later
+            mNowNanos += 16666667L;
+            mIntegrator.step(mNowNanos, true, mPoints, 1, 4);
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.android.systemui.navigation.Res;
 import com.android.systemui.navigation.NavbarOverlayResources;
 import com.android.systemui.navigation.pulse.PulseController;
 import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
+import com.android.systemui.navigation.utils.GestureTimerWheel;
 import com.android.systemui.navigation.utils.SmartObserver;
 import com.android.systemui.plugins.statusbar.phone.NavGesture;
 import com.android.systemui.statusbar.phone.BarTransitions;
@@ -185,6 +186,7 @@ public abstract class BaseNavigationBar extends LinearLayout implements Navigato
         filter.addAction(AudioManager.STREAM_MUTE_CHANGED_ACTION);
         filter.addAction(AudioManager.VOLUME_CHANGED_ACTION);
         filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGING);
+        filter.addAction(Intent.ACTION_BATTERY_CHANGED);
         filter.addAction(Intent.ACTION_SCREEN_ON);
         filter.addAction(Intent.ACTION_SCREEN_OFF);
         filter.addAction(Intent.ACTION_BOOT_COMPLETED);
@@ -672,6 +674,12 @@ public abstract class BaseNavigationBar extends LinearLayout implements Navigato
                         mCurrentView.getWidth(), mCurrentView.getHeight(),
                         visibilityToString(mCurrentView.getVisibility())));
 
+        GestureTimerWheel.getInstance().dump(pw, "      ");
+
+        if (mPulse != null) {
+            mPulse.dump(pw);
+        }
+
         pw.println("    }");
     }
 
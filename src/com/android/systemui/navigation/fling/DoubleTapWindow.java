@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Learn how long this user takes between the two taps of a double tap and
+ * size the double tap window to fit, so fast tappers don't wait out the
+ * full timeout on every single tap. Running mean and mean deviation of the
+ * observed intervals, the window is the mean plus a few deviations, the
+ * same way TCP sizes its retransmit timeout from round trip samples
+ *
+ */
+
+package com.android.systemui.navigation.fling;
+
+public class DoubleTapWindow {
+    // shifts for the running averages, 1/8 for the mean, 1/4 for the deviation
+    private static final int MEAN_SHIFT = 3;
+    private static final int DEV_SHIFT = 2;
+    // deviations of slack on top of the mean
+    private static final int DEV_MULTIPLIER = 4;
+    // trust the learned window only after this many double taps
+    private static final int MIN_SAMPLES = 5;
+
+    private final int mMinWindow;
+    private final int mMaxWindow;
+    // both kept scaled by their shift to stay in integer math
+    private int mScaledMean;
+    private int mScaledDev;
+    private int mSamples;
+    private int mWindow;
+
+    /**
+     * @param minWindow - never wait less than this
+     * @param maxWindow - the stock timeout, used until enough taps are seen
+     */
+    public DoubleTapWindow(int minWindow, int maxWindow) {
+        mMinWindow = minWindow;
+        mMaxWindow = maxWindow;
+        mWindow = maxWindow;
+    }
+
+    /**
+     * Feed the time from the first tap lifting to the second tap landing.
+     * Also feed second taps that came in just after a shortened window
+     * closed, so a window that got too tight grows back
+     */
+    public void addInterval(long interval) {
+        if (interval < 0 || interval > mMaxWindow) {
+            return;
+        }
+        final int sample = (int) interval;
+        if (mSamples == 0) {
+            mScaledMean = sample << MEAN_SHIFT;
+            mScaledDev = (sample / 2) << DEV_SHIFT;
+        } else {
+            final int error = sample - (mScaledMean >> MEAN_SHIFT);
+            mScaledMean += error;
+            mScaledDev += Math.abs(error) - (mScaledDev >> DEV_SHIFT);
+        }
+        if (mSamples < MIN_SAMPLES) {
+            mSamples++;
+        }
+        if (mSamples >= MIN_SAMPLES) {
+            final int window = (mScaledMean >> MEAN_SHIFT)
+                    + DEV_MULTIPLIER * (mScaledDev >> DEV_SHIFT);
+            mWindow = Math.max(mMinWindow, Math.min(mMaxWindow, window));
+        }
+    }
+
+    public int getWindow() {
+        return mWindow;
+    }
+}
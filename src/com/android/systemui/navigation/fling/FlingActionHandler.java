@@ -26,7 +26,7 @@
 package com.android.systemui.navigation.fling;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -59,7 +59,50 @@ public class FlingActionHandler implements Swipeable, SmartObservable {
         	ActionConstants.getDefaults(ActionConstants.FLING).getUri()));
     }
 
-    private Map<String, ActionConfig> mActionMap = new HashMap<String, ActionConfig>();
+    // user action tags and the one finger gestures they bind. Left and
+    // right swipes don't care where they started and bind every zone
+    private static final String[] TAGS = {
+            ActionConstants.Fling.SINGLE_LEFT_TAP_TAG,
+            ActionConstants.Fling.SINGLE_RIGHT_TAP_TAG,
+            ActionConstants.Fling.DOUBLE_LEFT_TAP_TAG,
+            ActionConstants.Fling.DOUBLE_RIGHT_TAP_TAG,
+            ActionConstants.Fling.LONG_LEFT_PRESS_TAG,
+            ActionConstants.Fling.LONG_RIGHT_PRESS_TAG,
+            ActionConstants.Fling.FLING_SHORT_LEFT_TAG,
+            ActionConstants.Fling.FLING_LONG_LEFT_TAG,
+            ActionConstants.Fling.FLING_SHORT_RIGHT_TAG,
+            ActionConstants.Fling.FLING_LONG_RIGHT_TAG,
+            ActionConstants.Fling.FLING_LEFT_UP_TAG,
+            ActionConstants.Fling.FLING_RIGHT_UP_TAG
+    };
+    private static final int[] TAG_GESTURES = {
+            FlingGesture.tap(FlingGesture.ZONE_LEFT, 1),
+            FlingGesture.tap(FlingGesture.ZONE_RIGHT, 1),
+            FlingGesture.tap(FlingGesture.ZONE_LEFT, 2),
+            FlingGesture.tap(FlingGesture.ZONE_RIGHT, 2),
+            FlingGesture.longPress(FlingGesture.ZONE_LEFT),
+            FlingGesture.longPress(FlingGesture.ZONE_RIGHT),
+            FlingGesture.swipe(FlingGesture.ZONE_LEFT, FlingGesture.DIR_LEFT,
+                    FlingGesture.LENGTH_SHORT, 1),
+            FlingGesture.swipe(FlingGesture.ZONE_LEFT, FlingGesture.DIR_LEFT,
+                    FlingGesture.LENGTH_LONG, 1),
+            FlingGesture.swipe(FlingGesture.ZONE_LEFT, FlingGesture.DIR_RIGHT,
+                    FlingGesture.LENGTH_SHORT, 1),
+            FlingGesture.swipe(FlingGesture.ZONE_LEFT, FlingGesture.DIR_RIGHT,
+                    FlingGesture.LENGTH_LONG, 1),
+            FlingGesture.swipe(FlingGesture.ZONE_LEFT, FlingGesture.DIR_UP,
+                    FlingGesture.LENGTH_SHORT, 1),
+            FlingGesture.swipe(FlingGesture.ZONE_RIGHT, FlingGesture.DIR_UP,
+                    FlingGesture.LENGTH_SHORT, 1)
+    };
+
+    // actions by gesture id, fallbacks already applied
+    private final ActionConfig[] mActions = new ActionConfig[FlingGesture.COUNT];
+    // a tap or press starting in the zone may end in recents
+    private final boolean[] mTapRecents = new boolean[FlingGesture.ZONES];
+    // any swipe may end in recents
+    private boolean mSwipeRecents;
+
     private View mHost;
     private Context mContext;
     private boolean isDoubleTapEnabled;
@@ -69,35 +112,6 @@ public class FlingActionHandler implements Swipeable, SmartObservable {
     private boolean mOnTapPreloadedRecents;
     private boolean mOnSwipePreloadedRecents;
 
-    // TODO: move these to ActionConstants and make the whole
-    // preload code more granular to avoid unneeded preload tasks
-    private final ArrayList<String> mRightTapActions = new ArrayList<>();
-    private final ArrayList<String> mLeftTapActions = new ArrayList<>();
-    private final ArrayList<String> mSwipeActions = new ArrayList<>();
-
-    private void setRightTapActions() {
-        mRightTapActions.clear();
-        mRightTapActions.add("single_right_tap");
-        mRightTapActions.add("double_right_tap");
-        mRightTapActions.add("long_right_press");
-    }
-
-    private void setLeftTapActions() {
-        mLeftTapActions.clear();
-        mLeftTapActions.add("single_left_tap");
-        mLeftTapActions.add("double_left_tap");
-        mLeftTapActions.add("long_left_press");
-    }
-
-    private void setSwipeActions() {
-        mSwipeActions.add("fling_short_right");
-        mSwipeActions.add("fling_long_right");
-        mSwipeActions.add("fling_right_up");
-        mSwipeActions.add("fling_short_left");
-        mSwipeActions.add("fling_long_left");
-        mSwipeActions.add("fling_left_up");
-    }
-
     public FlingActionHandler(Context context, View host) {
         mContext = context;
         mHost = host;
@@ -105,19 +119,90 @@ public class FlingActionHandler implements Swipeable, SmartObservable {
     }
 
     void loadConfigs() {
-        mActionMap.clear();
+        Arrays.fill(mActions, null);
         ArrayList<ButtonConfig> configs = Config.getConfig(mContext,
                 ActionConstants.getDefaults(ActionConstants.FLING));
         for (Map.Entry<String, ConfigMap> entry : ActionConstants
                 .getDefaults(ActionConstants.FLING).getActionMap().entrySet()) {
             ButtonConfig button = configs.get(entry.getValue().button);
             ActionConfig action = button.getActionConfig(entry.getValue().action);
-            mActionMap.put(entry.getKey(), action);
+            bindTag(entry.getKey(), action);
+        }
+        resolveFallbacks();
+        updateGestureState();
+    }
+
+    private void bindTag(String tag, ActionConfig action) {
+        for (int i = 0; i < TAGS.length; i++) {
+            if (TextUtils.equals(TAGS[i], tag)) {
+                final int gesture = TAG_GESTURES[i];
+                final int direction = FlingGesture.getDirection(gesture);
+                if (direction == FlingGesture.DIR_LEFT || direction == FlingGesture.DIR_RIGHT) {
+                    for (int zone = 0; zone < FlingGesture.ZONES; zone++) {
+                        mActions[FlingGesture.withZone(gesture, zone)] = action;
+                    }
+                } else {
+                    mActions[gesture] = action;
+                }
+                return;
+            }
+        }
+    }
+
+    /*
+     * Fill unbound gestures from their closest bound relative so dispatch
+     * is a single lookup. Left and right taps, presses and up swipes borrow
+     * from the other side, extra fingers borrow from the one finger gesture.
+     * Center zone gestures are left alone, the gesture handler falls back
+     * to the side zones for those
+     */
+    private void resolveFallbacks() {
+        for (int gesture = 0; gesture < FlingGesture.COUNT; gesture++) {
+            final int zone = FlingGesture.getZone(gesture);
+            final int direction = FlingGesture.getDirection(gesture);
+            if (isBound(mActions[gesture]) || FlingGesture.getFingers(gesture) != 1
+                    || zone == FlingGesture.ZONE_CENTER
+                    || direction == FlingGesture.DIR_LEFT || direction == FlingGesture.DIR_RIGHT) {
+                continue;
+            }
+            final ActionConfig other = mActions[FlingGesture.withZone(gesture,
+                    zone == FlingGesture.ZONE_LEFT ? FlingGesture.ZONE_RIGHT
+                            : FlingGesture.ZONE_LEFT)];
+            if (other != null) {
+                mActions[gesture] = other;
+            }
+        }
+        for (int gesture = 0; gesture < FlingGesture.COUNT; gesture++) {
+            if (FlingGesture.getFingers(gesture) > 1 && !isBound(mActions[gesture])) {
+                mActions[gesture] = mActions[FlingGesture.withFingers(gesture, 1)];
+            }
+        }
+    }
+
+    private void updateGestureState() {
+        isDoubleTapEnabled = false;
+        mSwipeRecents = false;
+        Arrays.fill(mTapRecents, false);
+        for (int gesture = 0; gesture < FlingGesture.COUNT; gesture++) {
+            final ActionConfig action = mActions[gesture];
+            if (!isBound(action)) {
+                continue;
+            }
+            if (FlingGesture.getDirection(gesture) == FlingGesture.DIR_NONE) {
+                if (FlingGesture.getTaps(gesture) > 1) {
+                    isDoubleTapEnabled = true;
+                }
+                if (action.isActionRecents()) {
+                    mTapRecents[FlingGesture.getZone(gesture)] = true;
+                }
+            } else if (action.isActionRecents()) {
+                mSwipeRecents = true;
+            }
         }
-        setDoubleTapEnabled();
-        setLeftTapActions();
-        setRightTapActions();
-        setSwipeActions();
+    }
+
+    private static boolean isBound(ActionConfig action) {
+        return action != null && !action.hasNoAction();
     }
 
     public void setKeyguardShowing(boolean showing) {
@@ -127,16 +212,20 @@ public class FlingActionHandler implements Swipeable, SmartObservable {
         mKeyguardShowing = showing;
     }
 
-    public void fireAction(ActionConfig action) {
-        if (action == null || action.hasNoAction()) {
-            return;
+    private boolean isActionAllowed(ActionConfig action) {
+        if (!isBound(action)) {
+            return false;
         }
-        final String theAction = action.getAction();
         // only back is allowed in keyguard
-        if (mKeyguardShowing
-                && (!TextUtils.equals(theAction, ActionHandler.SYSTEMUI_TASK_BACK))) {
+        return !mKeyguardShowing
+                || TextUtils.equals(action.getAction(), ActionHandler.SYSTEMUI_TASK_BACK);
+    }
+
+    public void fireAction(ActionConfig action) {
+        if (!isActionAllowed(action)) {
             return;
         }
+        final String theAction = action.getAction();
         mHost.performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY);
         mHost.playSoundEffect(SoundEffectConstants.CLICK);
         ActionHandler.performTask(mContext, theAction);
@@ -152,133 +241,45 @@ public class FlingActionHandler implements Swipeable, SmartObservable {
     }
 
     @Override
-    public void onShortLeftSwipe() {
-        fireAction((ActionConfig) mActionMap.get(ActionConstants.Fling.FLING_SHORT_LEFT_TAG));
-    }
-
-    @Override
-    public void onLongLeftSwipe() {
-        fireAction((ActionConfig) mActionMap.get(ActionConstants.Fling.FLING_LONG_LEFT_TAG));
+    public boolean hasGesture(int gesture) {
+        return isBound(mActions[gesture]);
     }
 
     @Override
-    public void onShortRightSwipe() {
-        fireAction((ActionConfig) mActionMap.get(ActionConstants.Fling.FLING_SHORT_RIGHT_TAG));
-    }
-
-    @Override
-    public void onLongRightSwipe() {
-        fireAction((ActionConfig) mActionMap.get(ActionConstants.Fling.FLING_LONG_RIGHT_TAG));
-    }
-
-    @Override
-    public void onUpRightSwipe() {
-        ActionConfig left_swipe = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.FLING_LEFT_UP_TAG);
-        ActionConfig right_swipe = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.FLING_RIGHT_UP_TAG);
-        fireAction(!right_swipe.hasNoAction() ? right_swipe : left_swipe);
-    }
-
-    @Override
-    public void onUpLeftSwipe() {
-        ActionConfig left_swipe = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.FLING_LEFT_UP_TAG);
-        ActionConfig right_swipe = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.FLING_RIGHT_UP_TAG);
-        fireAction(!left_swipe.hasNoAction() ? left_swipe : right_swipe);
-    }
-
-    @Override
-    public void onSingleLeftPress() {
-        if (mUseKbCursors) {
-            ActionHandler.performTask(mContext, ActionHandler.SYSTEMUI_TASK_HOME);
-            return;
+    public void onGesture(int gesture) {
+        if (FlingGesture.isLongPress(gesture)) {
+            onLongPress(gesture);
+        } else if (FlingGesture.getDirection(gesture) == FlingGesture.DIR_NONE
+                && FlingGesture.getTaps(gesture) == 1) {
+            onSingleTap(gesture);
+        } else {
+            fireAction(mActions[gesture]);
         }
-        ActionConfig left_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.SINGLE_LEFT_TAP_TAG);
-        ActionConfig right_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.SINGLE_RIGHT_TAP_TAG);
-        fireAction(!left_tap.hasNoAction() ? left_tap : right_tap);
     }
 
-    @Override
-    public void onSingleRightPress() {
+    private void onSingleTap(int gesture) {
         if (mUseKbCursors) {
             ActionHandler.performTask(mContext, ActionHandler.SYSTEMUI_TASK_HOME);
             return;
         }
-        ActionConfig right_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.SINGLE_RIGHT_TAP_TAG);
-        ActionConfig left_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.SINGLE_LEFT_TAP_TAG);
-        fireAction(!right_tap.hasNoAction() ? right_tap : left_tap);
+        fireAction(mActions[gesture]);
     }
 
-    protected void setImeActions(boolean enable) {
-        mUseKbCursors = enable;
-    }
-
-    private void setDoubleTapEnabled() {
-        isDoubleTapEnabled =
-                !((ActionConfig) mActionMap.get(ActionConstants.Fling.DOUBLE_LEFT_TAP_TAG)).hasNoAction()
-                || !((ActionConfig) mActionMap.get(ActionConstants.Fling.DOUBLE_RIGHT_TAP_TAG)).hasNoAction();
-    }
-
-    @Override
-    public void onDoubleLeftTap() {
-        ActionConfig left_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.DOUBLE_LEFT_TAP_TAG);
-        ActionConfig right_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.DOUBLE_RIGHT_TAP_TAG);
-        fireAction(!left_tap.hasNoAction() ? left_tap : right_tap);
-    }
-
-    @Override
-    public void onDoubleRightTap() {
-        ActionConfig right_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.DOUBLE_RIGHT_TAP_TAG);
-        ActionConfig left_tap = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.DOUBLE_LEFT_TAP_TAG);
-        fireAction(!right_tap.hasNoAction() ? right_tap : left_tap);
-    }
-
-    @Override
-    public void onLongLeftPress() {
+    private void onLongPress(int gesture) {
         mLongPressing = true;
         if (mUseKbCursors) {
-            moveKbCursor(false, true);
+            moveKbCursor(FlingGesture.getZone(gesture) == FlingGesture.ZONE_RIGHT, true);
             return;
         }
-
-        ActionConfig left_long = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.LONG_LEFT_PRESS_TAG);
-        ActionConfig right_long = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.LONG_RIGHT_PRESS_TAG);
         if (ActionHandler.isLockTaskOn()) {
             ActionHandler.turnOffLockTask();
         } else {
-            fireAction(!left_long.hasNoAction() ? left_long : right_long);
+            fireAction(mActions[gesture]);
         }
     }
 
-    @Override
-    public void onLongRightPress() {
-        mLongPressing = true;
-        if (mUseKbCursors) {
-            moveKbCursor(true, true);
-            return;
-        }
-
-        ActionConfig right_long = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.LONG_RIGHT_PRESS_TAG);
-        ActionConfig left_long = (ActionConfig) mActionMap
-                .get(ActionConstants.Fling.LONG_LEFT_PRESS_TAG);
-        if (ActionHandler.isLockTaskOn()) {
-            ActionHandler.turnOffLockTask();
-        } else {
-            fireAction(!right_long.hasNoAction() ? right_long : left_long);
-        }
+    protected void setImeActions(boolean enable) {
+        mUseKbCursors = enable;
     }
 
     private void moveKbCursor(boolean right, boolean firstTrigger) {
@@ -304,28 +305,39 @@ public class FlingActionHandler implements Swipeable, SmartObservable {
     }
 
     @Override
-    public void onDownPreloadRecents(boolean isRight) {
+    public void onDownPreloadRecents(int zone) {
         mOnTapPreloadedRecents = false;
-        for (String flingAction : (isRight? mRightTapActions : mLeftTapActions)) {
-            ActionConfig action = (ActionConfig) mActionMap.get(flingAction);
-            if (!mUseKbCursors && action != null && !action.hasNoAction() && action.isActionRecents()) {
-                ActionHandler.preloadRecentApps();
-                mOnTapPreloadedRecents = true;
-                return;
-            }
+        if (!mUseKbCursors && mTapRecents[zone]) {
+            ActionHandler.preloadRecentApps();
+            mOnTapPreloadedRecents = true;
         }
     }
 
     @Override
     public void onScrollPreloadRecents() {
         mOnSwipePreloadedRecents = false;
-        for (String swipeAction : mSwipeActions) {
-            ActionConfig action = (ActionConfig) mActionMap.get(swipeAction);
-            if (action != null && !action.hasNoAction() && action.isActionRecents() && !mOnTapPreloadedRecents) {
-                ActionHandler.preloadRecentApps();
-                mOnSwipePreloadedRecents = true;
-                return;
-            }
+        if (mSwipeRecents && !mOnTapPreloadedRecents) {
+            ActionHandler.preloadRecentApps();
+            mOnSwipePreloadedRecents = true;
+        }
+    }
+
+    @Override
+    public void onPreloadSwipe(int gesture) {
+        // the swipe may still end short or long
+        final ActionConfig shortSwipe = mActions[FlingGesture.withLength(gesture,
+                FlingGesture.LENGTH_SHORT)];
+        final ActionConfig longSwipe = mActions[FlingGesture.withLength(gesture,
+                FlingGesture.LENGTH_LONG)];
+        final boolean wantsRecents = (isBound(shortSwipe) && shortSwipe.isActionRecents())
+                || (isBound(longSwipe) && longSwipe.isActionRecents());
+        if (wantsRecents && !mOnTapPreloadedRecents && !mOnSwipePreloadedRecents) {
+            ActionHandler.preloadRecentApps();
+            mOnSwipePreloadedRecents = true;
+        } else if (!wantsRecents && mOnSwipePreloadedRecents && !mOnTapPreloadedRecents) {
+            // preloaded on first scroll for some other direction, let it go now
+            ActionHandler.cancelPreloadRecentApps();
+            mOnSwipePreloadedRecents = false;
         }
     }
 
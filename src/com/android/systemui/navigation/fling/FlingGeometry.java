@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Immutable snapshot of the bar size and orientation, everything Fling
+ * gesture math needs per touch. Rebuilt when the bar changes size or
+ * reorients, so classifying a gesture never reads view state or resources
+ *
+ */
+
+package com.android.systemui.navigation.fling;
+
+public final class FlingGeometry {
+    // bar lies along the bottom of the screen
+    public final boolean horizontal;
+    // device orientation, not the bar's
+    public final boolean landscape;
+    // half of the bar's long side, splits taps into left and right
+    public final float halfLength;
+    // reciprocals of the long and short bar sides, zero until laid out
+    public final float invLength;
+    public final float invBreadth;
+
+    public FlingGeometry(int width, int height, boolean landscape) {
+        this.landscape = landscape;
+        horizontal = width > height;
+        final int length = horizontal ? width : height;
+        final int breadth = horizontal ? height : width;
+        halfLength = length / 2f;
+        invLength = length > 0 ? 1f / length : 0f;
+        invBreadth = breadth > 0 ? 1f / breadth : 0f;
+    }
+}
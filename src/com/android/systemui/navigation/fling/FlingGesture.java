@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Fling gesture vocabulary. Every gesture is a zone of the bar, a
+ * direction, a length, a finger count and a tap count, packed into one
+ * small int so actions can live in a flat array indexed by gesture.
+ * Taps and presses have no direction, their length tells a tap from a
+ * long press. Up swipes only come in short
+ *
+ */
+
+package com.android.systemui.navigation.fling;
+
+public final class FlingGesture {
+    // where along the bar the gesture started. For a vertical bar
+    // "right" is the top end, same as everywhere else in Fling
+    public static final int ZONE_LEFT = 0;
+    public static final int ZONE_CENTER = 1;
+    public static final int ZONE_RIGHT = 2;
+    public static final int ZONES = 3;
+
+    public static final int DIR_NONE = 0;
+    public static final int DIR_LEFT = 1;
+    public static final int DIR_RIGHT = 2;
+    public static final int DIR_UP = 3;
+    public static final int DIRECTIONS = 4;
+
+    public static final int LENGTH_SHORT = 0;
+    public static final int LENGTH_LONG = 1;
+    public static final int LENGTHS = 2;
+
+    public static final int MAX_FINGERS = 2;
+    public static final int MAX_TAPS = 2;
+
+    // number of gesture ids, ids run from 0 to COUNT - 1
+    public static final int COUNT = ZONES * DIRECTIONS * LENGTHS * MAX_FINGERS * MAX_TAPS;
+
+    private FlingGesture() {}
+
+    /**
+     * @param fingers - clamped to 1..MAX_FINGERS
+     * @param taps - clamped to 1..MAX_TAPS
+     */
+    public static int id(int zone, int direction, int length, int fingers, int taps) {
+        fingers = Math.max(1, Math.min(MAX_FINGERS, fingers));
+        taps = Math.max(1, Math.min(MAX_TAPS, taps));
+        return (((zone * DIRECTIONS + direction) * LENGTHS + length) * MAX_FINGERS
+                + fingers - 1) * MAX_TAPS + taps - 1;
+    }
+
+    public static int tap(int zone, int taps) {
+        return id(zone, DIR_NONE, LENGTH_SHORT, 1, taps);
+    }
+
+    public static int longPress(int zone) {
+        return id(zone, DIR_NONE, LENGTH_LONG, 1, 1);
+    }
+
+    public static int swipe(int zone, int direction, int length, int fingers) {
+        return id(zone, direction, length, fingers, 1);
+    }
+
+    public static int getZone(int gesture) {
+        return gesture / (MAX_TAPS * MAX_FINGERS * LENGTHS * DIRECTIONS);
+    }
+
+    public static int getDirection(int gesture) {
+        return gesture / (MAX_TAPS * MAX_FINGERS * LENGTHS) % DIRECTIONS;
+    }
+
+    public static int getLength(int gesture) {
+        return gesture / (MAX_TAPS * MAX_FINGERS) % LENGTHS;
+    }
+
+    public static int getFingers(int gesture) {
+        return gesture / MAX_TAPS % MAX_FINGERS + 1;
+    }
+
+    public static int getTaps(int gesture) {
+        return gesture % MAX_TAPS + 1;
+    }
+
+    public static int withZone(int gesture, int zone) {
+        return id(zone, getDirection(gesture), getLength(gesture), getFingers(gesture),
+                getTaps(gesture));
+    }
+
+    public static int withLength(int gesture, int length) {
+        return id(getZone(gesture), getDirection(gesture), length, getFingers(gesture),
+                getTaps(gesture));
+    }
+
+    public static int withFingers(int gesture, int fingers) {
+        return id(getZone(gesture), getDirection(gesture), getLength(gesture), fingers,
+                getTaps(gesture));
+    }
+
+    public static boolean isLongPress(int gesture) {
+        return getDirection(gesture) == DIR_NONE && getLength(gesture) == LENGTH_LONG;
+    }
+}
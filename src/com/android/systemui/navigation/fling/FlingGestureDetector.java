@@ -15,17 +15,24 @@
  * 
  * Haxd up version from sdk. exposed some values
  * 
+ * Touch samples go into a preallocated GestureSampleBuffer instead of
+ * MotionEvent copies and a VelocityTracker, listeners read the down point,
+ * travel and velocity from there
+ * 
+ * Show press, long press and tap deadlines are GestureTimerWheel timers
+ * instead of Handler messages
+ * 
  */
 package com.android.systemui.navigation.fling;
 
 import com.android.systemui.R;
+import com.android.systemui.navigation.utils.GestureTimerWheel;
 
 import android.content.Context;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
 import android.view.InputEventConsistencyVerifier;
 import android.view.MotionEvent;
-import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
 
 /**
@@ -65,9 +72,9 @@ public class FlingGestureDetector {
          * feedback to the user to let them know that their action has been
          * recognized i.e. highlight an element.
          *
-         * @param e The down motion event
+         * @param samples The samples of the gesture, holding the down point
          */
-        void onShowPress(MotionEvent e);
+        void onShowPress(GestureSampleBuffer samples);
 
         /**
          * Notified when a tap occurs with the up {@link MotionEvent}
@@ -79,12 +86,11 @@ public class FlingGestureDetector {
         boolean onSingleTapUp(MotionEvent e);
 
         /**
-         * Notified when a scroll occurs with the initial on down {@link MotionEvent} and the
-         * current move {@link MotionEvent}. The distance in x and y is also supplied for
-         * convenience.
+         * Notified when a scroll occurs. The samples hold the down point and
+         * everything up to the current move. The distance in x and y is also
+         * supplied for convenience.
          *
-         * @param e1 The first down motion event that started the scrolling.
-         * @param e2 The move motion event that triggered the current onScroll.
+         * @param samples The samples of the gesture so far.
          * @param distanceX The distance along the X axis that has been scrolled since the last
          *              call to onScroll. This is NOT the distance between {@code e1}
          *              and {@code e2}.
@@ -93,7 +99,7 @@ public class FlingGestureDetector {
          *              and {@code e2}.
          * @return true if the event is consumed, else false
          */
-        boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY);
+        boolean onScroll(GestureSampleBuffer samples, float distanceX, float distanceY);
 
         /**
          * Notified when a scroll occurs with the initial on move {@link MotionEvent}
@@ -109,12 +115,12 @@ public class FlingGestureDetector {
         boolean onCancel();
 
         /**
-         * Notified when a long press occurs with the initial on down {@link MotionEvent}
-         * that trigged it.
+         * Notified when a long press occurs
          *
-         * @param e The initial on down motion event that started the longpress.
+         * @param samples The samples of the gesture, holding the down point
+         *              that started the longpress.
          */
-        void onLongPress(MotionEvent e);
+        void onLongPress(GestureSampleBuffer samples);
 
         /**
          * Notified when a long press is finished
@@ -123,19 +129,18 @@ public class FlingGestureDetector {
         void onFinishedLongPress();
 
         /**
-         * Notified of a fling event when it occurs with the initial on down {@link MotionEvent}
-         * and the matching up {@link MotionEvent}. The calculated velocity is supplied along
+         * Notified of a fling event when it occurs. The samples run from the
+         * down point to the up point. The calculated velocity is supplied along
          * the x and y axis in pixels per second.
          *
-         * @param e1 The first down motion event that started the fling.
-         * @param e2 The move motion event that triggered the current onFling.
+         * @param samples The samples of the whole fling.
          * @param velocityX The velocity of this fling measured in pixels per second
          *              along the x axis.
          * @param velocityY The velocity of this fling measured in pixels per second
          *              along the y axis.
          * @return true if the event is consumed, else false
          */
-        boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY);
+        boolean onFling(GestureSampleBuffer samples, float velocityX, float velocityY);
     }
 
     /**
@@ -151,18 +156,18 @@ public class FlingGestureDetector {
          * first tap is not followed by a second tap leading to a double-tap
          * gesture.
          *
-         * @param e The down motion event of the single-tap.
+         * @param samples The samples of the single-tap.
          * @return true if the event is consumed, else false
          */
-        boolean onSingleTapConfirmed(MotionEvent e);
+        boolean onSingleTapConfirmed(GestureSampleBuffer samples);
  
         /**
          * Notified when a double-tap occurs.
          *
-         * @param e The down motion event of the first tap of the double-tap.
+         * @param samples The samples of the first tap of the double-tap.
          * @return true if the event is consumed, else false
          */
-        boolean onDoubleTap(MotionEvent e);
+        boolean onDoubleTap(GestureSampleBuffer samples);
 
         /**
          * Notified when an event within a double-tap gesture occurs, including
@@ -186,13 +191,13 @@ public class FlingGestureDetector {
             return false;
         }
 
-        public void onLongPress(MotionEvent e) {
+        public void onLongPress(GestureSampleBuffer samples) {
         }
 
         public void onFinishedLongPress() {
         }
 
-        public boolean onScroll(MotionEvent e1, MotionEvent e2,
+        public boolean onScroll(GestureSampleBuffer samples,
                 float distanceX, float distanceY) {
             return false;
         }
@@ -205,19 +210,19 @@ public class FlingGestureDetector {
             return false;
         }
 
-        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
+        public boolean onFling(GestureSampleBuffer samples, float velocityX,
                 float velocityY) {
             return false;
         }
 
-        public void onShowPress(MotionEvent e) {
+        public void onShowPress(GestureSampleBuffer samples) {
         }
 
         public boolean onDown(MotionEvent e) {
             return false;
         }
 
-        public boolean onDoubleTap(MotionEvent e) {
+        public boolean onDoubleTap(GestureSampleBuffer samples) {
             return false;
         }
 
@@ -225,7 +230,7 @@ public class FlingGestureDetector {
             return false;
         }
 
-        public boolean onSingleTapConfirmed(MotionEvent e) {
+        public boolean onSingleTapConfirmed(GestureSampleBuffer samples) {
             return false;
         }
     }
@@ -241,12 +246,9 @@ public class FlingGestureDetector {
     private static final int DOUBLE_TAP_TIMEOUT = ViewConfiguration.getDoubleTapTimeout();
     private static final int DOUBLE_TAP_MIN_TIME = ViewConfiguration.getDoubleTapMinTime();
 
-    // constants for Message.what used by GestureHandler below
-    private static final int SHOW_PRESS = 1;
-    private static final int LONG_PRESS = 2;
-    private static final int TAP = 3;
-
-    private final Handler mHandler;
+    private final GestureTimerWheel.Timer mShowPressTimer;
+    private final GestureTimerWheel.Timer mLongPressTimer;
+    private final GestureTimerWheel.Timer mTapTimer;
     private final OnGestureListener mListener;
     private OnDoubleTapListener mDoubleTapListener;
 
@@ -256,8 +258,11 @@ public class FlingGestureDetector {
     private boolean mAlwaysInTapRegion;
     private boolean mAlwaysInBiggerTapRegion;
 
-    private MotionEvent mCurrentDownEvent;
-    private MotionEvent mPreviousUpEvent;
+    // samples of the current (or last) gesture, reused for every gesture
+    private final GestureSampleBuffer mSamples = new GestureSampleBuffer();
+    private boolean mHasDown;
+    // event time of the previous up, -1 if there was none
+    private long mPreviousUpTime = -1;
 
     /**
      * True when the user is still touching for the second tap (down, move, and
@@ -272,11 +277,6 @@ public class FlingGestureDetector {
 
     private boolean mIsLongpressEnabled;
 
-    /**
-     * Determines speed during touch scrolling
-     */
-    private VelocityTracker mVelocityTracker;
-
     /**
      * Consistency verifier for debugging purposes.
      */
@@ -284,39 +284,33 @@ public class FlingGestureDetector {
             InputEventConsistencyVerifier.isInstrumentationEnabled() ?
                     new InputEventConsistencyVerifier(this, 0) : null;
 
-    private class GestureHandler extends Handler {
-        GestureHandler() {
-            super();
+    private final Runnable mShowPress = new Runnable() {
+        @Override
+        public void run() {
+            mListener.onShowPress(mSamples);
         }
+    };
 
-        GestureHandler(Handler handler) {
-            super(handler.getLooper());
+    private final Runnable mLongPress = new Runnable() {
+        @Override
+        public void run() {
+            dispatchLongPress();
         }
+    };
 
+    private final Runnable mTap = new Runnable() {
         @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-            case SHOW_PRESS:
-                mListener.onShowPress(mCurrentDownEvent);
-                break;
-            case LONG_PRESS:
-                dispatchLongPress();
-                break;
-            case TAP:
-                // If the user's finger is still down, do not count it as a tap
-                if (mDoubleTapListener != null) {
-                    if (!mStillDown) {
-                        mDoubleTapListener.onSingleTapConfirmed(mCurrentDownEvent);
-                    } else {
-                        mDeferConfirmSingleTap = true;
-                    }
+        public void run() {
+            // If the user's finger is still down, do not count it as a tap
+            if (mDoubleTapListener != null) {
+                if (!mStillDown) {
+                    mDoubleTapListener.onSingleTapConfirmed(mSamples);
+                } else {
+                    mDeferConfirmSingleTap = true;
                 }
-                break;
-            default:
-                throw new RuntimeException("Unknown message " + msg); //never
             }
         }
-    }
+    };
 
     /**
      * Creates a GestureDetector with the supplied listener.
@@ -369,11 +363,13 @@ public class FlingGestureDetector {
      * @throws NullPointerException if {@code listener} is null.
      */
     public FlingGestureDetector(Context context, OnGestureListener listener, Handler handler) {
-        if (handler != null) {
-            mHandler = new GestureHandler(handler);
-        } else {
-            mHandler = new GestureHandler();
-        }
+        // share the main thread wheel unless asked to run somewhere else
+        final Looper looper = handler != null ? handler.getLooper() : Looper.myLooper();
+        final GestureTimerWheel wheel = looper == Looper.getMainLooper()
+                ? GestureTimerWheel.getInstance() : new GestureTimerWheel(looper);
+        mShowPressTimer = wheel.newTimer(mShowPress);
+        mLongPressTimer = wheel.newTimer(mLongPress);
+        mTapTimer = wheel.newTimer(mTap);
         mListener = listener;
         if (listener instanceof OnDoubleTapListener) {
             setOnDoubleTapListener((OnDoubleTapListener) listener);
@@ -506,11 +502,6 @@ public class FlingGestureDetector {
 
         final int action = ev.getAction();
 
-        if (mVelocityTracker == null) {
-            mVelocityTracker = VelocityTracker.obtain();
-        }
-        mVelocityTracker.addMovement(ev);
-
         final boolean pointerUp =
                 (action & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_POINTER_UP;
         final int skipIndex = pointerUp ? ev.getActionIndex() : -1;
@@ -541,52 +532,35 @@ public class FlingGestureDetector {
             mDownFocusX = mLastFocusX = focusX;
             mDownFocusY = mLastFocusY = focusY;
 
-            // Check the dot product of current velocities.
-            // If the pointer that left was opposing another velocity vector, clear.
-            mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
-            final int upIndex = ev.getActionIndex();
-            final int id1 = ev.getPointerId(upIndex);
-            final float x1 = mVelocityTracker.getXVelocity(id1);
-            final float y1 = mVelocityTracker.getYVelocity(id1);
-            for (int i = 0; i < count; i++) {
-                if (i == upIndex) continue;
-
-                final int id2 = ev.getPointerId(i);
-                final float x = x1 * mVelocityTracker.getXVelocity(id2);
-                final float y = y1 * mVelocityTracker.getYVelocity(id2);
-
-                final float dot = x + y;
-                if (dot < 0) {
-                    mVelocityTracker.clear();
-                    break;
-                }
+            // samples follow a single pointer. If that one left, restart the
+            // velocity window on a remaining pointer
+            if (mHasDown) {
+                mSamples.onPointerUp(ev);
             }
             break;
 
         case MotionEvent.ACTION_DOWN:
             if (mDoubleTapListener != null) {
-                boolean hadTapMessage = mHandler.hasMessages(TAP);
-                if (hadTapMessage) mHandler.removeMessages(TAP);
-                if ((mCurrentDownEvent != null) && (mPreviousUpEvent != null) && hadTapMessage &&
-                        isConsideredDoubleTap(mCurrentDownEvent, mPreviousUpEvent, ev)) {
+                boolean hadTapMessage = mTapTimer.isPending();
+                if (hadTapMessage) mTapTimer.cancel();
+                if (mHasDown && (mPreviousUpTime >= 0) && hadTapMessage &&
+                        isConsideredDoubleTap(ev)) {
                     // This is a second tap
                     mIsDoubleTapping = true;
                     // Give a callback with the first tap of the double-tap
-                    handled |= mDoubleTapListener.onDoubleTap(mCurrentDownEvent);
+                    handled |= mDoubleTapListener.onDoubleTap(mSamples);
                     // Give a callback with down event of the double-tap
                     handled |= mDoubleTapListener.onDoubleTapEvent(ev);
                 } else {
                     // This is a first tap
-                    mHandler.sendEmptyMessageDelayed(TAP, getDoubleTapTimeout());
+                    mTapTimer.schedule(getDoubleTapTimeout());
                 }
             }
 
             mDownFocusX = mLastFocusX = focusX;
             mDownFocusY = mLastFocusY = focusY;
-            if (mCurrentDownEvent != null) {
-                mCurrentDownEvent.recycle();
-            }
-            mCurrentDownEvent = MotionEvent.obtain(ev);
+            mSamples.start(ev);
+            mHasDown = true;
             mAlwaysInTapRegion = true;
             mAlwaysInBiggerTapRegion = true;
             mStillDown = true;
@@ -594,16 +568,18 @@ public class FlingGestureDetector {
             mDeferConfirmSingleTap = false;
 
             if (mIsLongpressEnabled) {
-                mHandler.removeMessages(LONG_PRESS);
-                mHandler.sendEmptyMessageAtTime(LONG_PRESS, mCurrentDownEvent.getDownTime()
+                mLongPressTimer.scheduleAt(ev.getDownTime()
                         + getTapTimeout() + getLongPressTimeout());
             }
-            mHandler.sendEmptyMessageAtTime(SHOW_PRESS, mCurrentDownEvent.getDownTime() + getTapTimeout());
+            mShowPressTimer.scheduleAt(ev.getDownTime() + getTapTimeout());
             handled |= mListener.onDown(ev);
             break;
 
         case MotionEvent.ACTION_MOVE:
-            if (mInLongPress) {
+            if (mHasDown) {
+                mSamples.addMovement(ev);
+            }
+            if (mInLongPress || !mHasDown) {
                 break;
             }
             final float scrollX = mLastFocusX - focusX;
@@ -616,13 +592,13 @@ public class FlingGestureDetector {
                 final int deltaY = (int) (focusY - mDownFocusY);
                 int distance = (deltaX * deltaX) + (deltaY * deltaY);
                 if (distance > mTouchSlopSquare) {
-                    handled = mListener.onScroll(mCurrentDownEvent, ev, scrollX, scrollY);
+                    handled = mListener.onScroll(mSamples, scrollX, scrollY);
                     mLastFocusX = focusX;
                     mLastFocusY = focusY;
                     mAlwaysInTapRegion = false;
-                    mHandler.removeMessages(TAP);
-                    mHandler.removeMessages(SHOW_PRESS);
-                    mHandler.removeMessages(LONG_PRESS);
+                    mTapTimer.cancel();
+                    mShowPressTimer.cancel();
+                    mLongPressTimer.cancel();
                     mListener.onFinishedLongPress();
                     mListener.onFirstScroll();
                 }
@@ -630,7 +606,7 @@ public class FlingGestureDetector {
                     mAlwaysInBiggerTapRegion = false;
                 }
             } else if ((Math.abs(scrollX) >= 1) || (Math.abs(scrollY) >= 1)) {
-                handled = mListener.onScroll(mCurrentDownEvent, ev, scrollX, scrollY);
+                handled = mListener.onScroll(mSamples, scrollX, scrollY);
                 mLastFocusX = focusX;
                 mLastFocusY = focusY;
             }
@@ -638,47 +614,37 @@ public class FlingGestureDetector {
 
         case MotionEvent.ACTION_UP:
             mStillDown = false;
-            MotionEvent currentUpEvent = MotionEvent.obtain(ev);
+            if (mHasDown) {
+                mSamples.addMovement(ev);
+            }
             if (mIsDoubleTapping) {
                 // Finally, give the up event of the double-tap
                 handled |= mDoubleTapListener.onDoubleTapEvent(ev);
             } else if (mInLongPress) {
-                mHandler.removeMessages(TAP);
+                mTapTimer.cancel();
                 mInLongPress = false;
             } else if (mAlwaysInTapRegion) {
                 handled = mListener.onSingleTapUp(ev);
                 if (mDeferConfirmSingleTap && mDoubleTapListener != null) {
-                    mDoubleTapListener.onSingleTapConfirmed(ev);
+                    mDoubleTapListener.onSingleTapConfirmed(mSamples);
                 }
-            } else {
+            } else if (mHasDown) {
 
                 // A fling must travel the minimum tap distance
-                final VelocityTracker velocityTracker = mVelocityTracker;
-                final int pointerId = ev.getPointerId(0);
-                velocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
-                final float velocityY = velocityTracker.getYVelocity(pointerId);
-                final float velocityX = velocityTracker.getXVelocity(pointerId);
+                mSamples.computeCurrentVelocity(1000, mMaximumFlingVelocity);
+                final float velocityY = mSamples.getVelocityY();
+                final float velocityX = mSamples.getVelocityX();
 
                 if ((Math.abs(velocityY) > mMinimumFlingVelocity)
                         || (Math.abs(velocityX) > mMinimumFlingVelocity)){
-                    handled = mListener.onFling(mCurrentDownEvent, ev, velocityX, velocityY);
+                    handled = mListener.onFling(mSamples, velocityX, velocityY);
                 }
             }
-            if (mPreviousUpEvent != null) {
-                mPreviousUpEvent.recycle();
-            }
-            // Hold the event we obtained above - listeners may have changed the original.
-            mPreviousUpEvent = currentUpEvent;
-            if (mVelocityTracker != null) {
-                // This may have been cleared when we called out to the
-                // application above.
-                mVelocityTracker.recycle();
-                mVelocityTracker = null;
-            }
+            mPreviousUpTime = ev.getEventTime();
             mIsDoubleTapping = false;
             mDeferConfirmSingleTap = false;
-            mHandler.removeMessages(SHOW_PRESS);
-            mHandler.removeMessages(LONG_PRESS);
+            mShowPressTimer.cancel();
+            mLongPressTimer.cancel();
             mListener.onFinishedLongPress();
             break;
 
@@ -695,11 +661,9 @@ public class FlingGestureDetector {
     }
 
     private void cancel() {
-        mHandler.removeMessages(SHOW_PRESS);
-        mHandler.removeMessages(LONG_PRESS);
-        mHandler.removeMessages(TAP);
-        mVelocityTracker.recycle();
-        mVelocityTracker = null;
+        mShowPressTimer.cancel();
+        mLongPressTimer.cancel();
+        mTapTimer.cancel();
         mIsDoubleTapping = false;
         mStillDown = false;
         mAlwaysInTapRegion = false;
@@ -711,9 +675,9 @@ public class FlingGestureDetector {
     }
 
     private void cancelTaps() {
-        mHandler.removeMessages(SHOW_PRESS);
-        mHandler.removeMessages(LONG_PRESS);
-        mHandler.removeMessages(TAP);
+        mShowPressTimer.cancel();
+        mLongPressTimer.cancel();
+        mTapTimer.cancel();
         mIsDoubleTapping = false;
         mAlwaysInTapRegion = false;
         mAlwaysInBiggerTapRegion = false;
@@ -723,27 +687,27 @@ public class FlingGestureDetector {
         }
     }
 
-    private boolean isConsideredDoubleTap(MotionEvent firstDown, MotionEvent firstUp,
-            MotionEvent secondDown) {
+    private boolean isConsideredDoubleTap(MotionEvent secondDown) {
         if (!mAlwaysInBiggerTapRegion) {
             return false;
         }
 
-        final long deltaTime = secondDown.getEventTime() - firstUp.getEventTime();
+        final long deltaTime = secondDown.getEventTime() - mPreviousUpTime;
         if (deltaTime > getDoubleTapTimeout() || deltaTime < getDoubleTapMinTime()) {
             return false;
         }
 
-        int deltaX = (int) firstDown.getX() - (int) secondDown.getX();
-        int deltaY = (int) firstDown.getY() - (int) secondDown.getY();
+        // mSamples still holds the first tap
+        int deltaX = (int) mSamples.getDownX() - (int) secondDown.getX();
+        int deltaY = (int) mSamples.getDownY() - (int) secondDown.getY();
         return (deltaX * deltaX + deltaY * deltaY < mDoubleTapSlopSquare);
     }
 
     private void dispatchLongPress() {
-        mHandler.removeMessages(TAP);
+        mTapTimer.cancel();
         mDeferConfirmSingleTap = false;
         mInLongPress = true;
-        mListener.onLongPress(mCurrentDownEvent);
+        mListener.onLongPress(mSamples);
     }
 }
 
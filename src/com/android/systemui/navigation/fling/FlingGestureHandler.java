@@ -27,7 +27,9 @@ package com.android.systemui.navigation.fling;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.android.systemui.R;
 import com.android.systemui.navigation.fling.FlingGestureDetector.OnGestureListener;
+import com.android.systemui.navigation.utils.GestureTimerWheel;
 import com.android.systemui.navigation.utils.SmartObserver.SmartObservable;
 import com.android.internal.utils.du.DUActionUtils;
 
@@ -35,7 +37,6 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.Resources;
 import android.net.Uri;
-import android.os.Handler;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.util.Log;
@@ -51,36 +52,29 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
     public interface Swipeable {
         public boolean onDoubleTapEnabled();
 
-        public void onSingleLeftPress();
+        /**
+         * @return true if an action is bound to the FlingGesture id
+         */
+        public boolean hasGesture(int gesture);
 
-        public void onSingleRightPress();
+        /**
+         * A tap, press or swipe completed, gesture is a FlingGesture id
+         */
+        public void onGesture(int gesture);
 
-        public void onDoubleLeftTap();
-
-        public void onDoubleRightTap();
-
-        public void onLongLeftPress();
-
-        public void onLongRightPress();
-
-        public void onShortLeftSwipe();
-
-        public void onLongLeftSwipe();
-
-        public void onShortRightSwipe();
-
-        public void onLongRightSwipe();
-
-        public void onUpRightSwipe();
-
-        public void onUpLeftSwipe();
-
-        public void onDownPreloadRecents(boolean isRight);
+        public void onDownPreloadRecents(int zone);
 
         public void onScrollPreloadRecents();
 
         public void onCancelPreloadRecents();
 
+        /**
+         * The swipe direction is settled while the finger is still moving,
+         * get whatever its actions need ready. The swipe may still end
+         * short or long, whatever the gesture's length says
+         */
+        public void onPreloadSwipe(int gesture);
+
         public void cancelLongPress();
     }
 
@@ -101,10 +95,26 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
     private static final int DT_TIMEOUT = ViewConfiguration.getDoubleTapTimeout() - 100;
 
     // in-house double tap logic
-    private Handler mHandler = new Handler();
+    private final GestureTimerWheel.Timer mDoubleTapTimer;
+    // single tap gesture waiting out the double tap window
+    private int mPendingTap;
     private boolean mIsDoubleTapPending;
     private boolean mWasConsumed;
 
+    // double tap window learned from the user's own double taps
+    private final boolean mLearnDoubleTapWindow;
+    private final DoubleTapWindow mDoubleTapWindow;
+    private long mLastTapUpTime = -1;
+    // the last single tap was committed on a learned window shorter than DT_TIMEOUT
+    private boolean mLastTapCommittedEarly;
+
+    // incremental swipe classification on every move
+    private final boolean mEarlySwipeCommit;
+    private final int mMinFlingVelocity;
+    // the swipe already fired while moving, ignore the fling at the end
+    private boolean mSwipeCommitted;
+    private boolean mSwipePreloaded;
+
     // long swipe thresholds from user settings or default config
     //
     // left and right thresholds for tablets when device orientation is landscape
@@ -117,6 +127,10 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
     private float mUpVert;
     private float mDownVert;
 
+    // learns the thresholds above from the user's own swipes
+    private final boolean mAdaptiveLongSwipe;
+    private final SwipeStats mSwipeStats = new SwipeStats();
+
     // pass Fling events to listener
     private Swipeable mReceiver;
     // swipe analysis and state
@@ -125,25 +139,21 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
 
     // for width/height logic
     private View mHost;
+    // bar size and orientation as of the last layout or reorient
+    private FlingGeometry mGeometry = new FlingGeometry(0, 0, false);
+    // part of the bar length, around the middle, that is the center zone
+    private final float mCenterZone;
     // is navbar in "left in landscape" mode (vertical bar on left instead of right)
     private boolean mLeftInLandscape;
     private final boolean mIsTablet;
 
-    private Runnable mDoubleTapLeftTimeout = new Runnable() {
+    private Runnable mDoubleTapTimeout = new Runnable() {
         @Override
         public void run() {
             mWasConsumed = false;
             mIsDoubleTapPending = false;
-            mReceiver.onSingleLeftPress();
-        }
-    };
-
-    private Runnable mDoubleTapRightTimeout = new Runnable() {
-        @Override
-        public void run() {
-            mWasConsumed = false;
-            mIsDoubleTapPending = false;
-            mReceiver.onSingleRightPress();
+            mLastTapCommittedEarly = mDoubleTapWindow.getWindow() < DT_TIMEOUT;
+            mReceiver.onGesture(mPendingTap);
         }
     };
 
@@ -152,6 +162,18 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
         mReceiver = swiper;
         mHost = host;
         mIsTablet = isTablet;
+        mDoubleTapTimer = GestureTimerWheel.getInstance().newTimer(mDoubleTapTimeout);
+        mCenterZone = context.getResources()
+                .getInteger(R.integer.config_flingCenterZonePercent) * 0.01f;
+        mEarlySwipeCommit = context.getResources()
+                .getBoolean(R.bool.config_flingEarlySwipeCommit);
+        mMinFlingVelocity = ViewConfiguration.get(context).getScaledMinimumFlingVelocity();
+        mAdaptiveLongSwipe = context.getResources()
+                .getBoolean(R.bool.config_flingAdaptiveLongSwipe);
+        mLearnDoubleTapWindow = context.getResources()
+                .getBoolean(R.bool.config_flingLearnDoubleTapWindow);
+        mDoubleTapWindow = new DoubleTapWindow(Math.min(DT_TIMEOUT, context.getResources()
+                .getInteger(R.integer.config_flingDoubleTapMinWindow)), DT_TIMEOUT);
         updateSettings();
     }
 
@@ -165,6 +187,14 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
         mLeftInLandscape = leftInLandscape;
     }
 
+    /**
+     * Host changed size or reoriented, snapshot the new bar geometry
+     */
+    public void updateGeometry() {
+        mGeometry = new FlingGeometry(mHost.getWidth(), mHost.getHeight(),
+                DUActionUtils.isLandscape(mContext));
+    }
+
     public void setOnSwipeListener(Swipeable swiper) {
         if (swiper != null) {
             mReceiver = swiper;
@@ -173,56 +203,85 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
 
     @Override
     public boolean onDown(MotionEvent e) {
-        boolean isRight = isRightSide(e.getX(), e.getY());
+        mSwipeCommitted = false;
+        mSwipePreloaded = false;
+        final float x = e.getX();
+        final float y = e.getY();
+        final long sinceLastTap = mLastTapUpTime < 0 ? -1 : e.getEventTime() - mLastTapUpTime;
         if (mIsDoubleTapPending) {
             mIsDoubleTapPending = false;
             mWasConsumed = true;
-            mHandler.removeCallbacks(mDoubleTapLeftTimeout);
-            mHandler.removeCallbacks(mDoubleTapRightTimeout);
-            if (isRight) {
-                mReceiver.onDoubleRightTap();
-            } else {
-                mReceiver.onDoubleLeftTap();
+            mDoubleTapTimer.cancel();
+            if (mLearnDoubleTapWindow) {
+                mDoubleTapWindow.addInterval(sinceLastTap);
             }
+            mReceiver.onGesture(resolveGesture(x, y, FlingGesture.DIR_NONE,
+                    FlingGesture.LENGTH_SHORT, 1, 2));
             return true;
         }
-        mReceiver.onDownPreloadRecents(isRight);
+        if (mLearnDoubleTapWindow && mLastTapCommittedEarly && sinceLastTap >= 0
+                && sinceLastTap <= DT_TIMEOUT) {
+            // second tap just missed a shortened window, let the window grow back
+            mDoubleTapWindow.addInterval(sinceLastTap);
+        }
+        mLastTapCommittedEarly = false;
+        mReceiver.onDownPreloadRecents(FlingGesture.getZone(resolveGesture(x, y,
+                FlingGesture.DIR_NONE, FlingGesture.LENGTH_SHORT, 1, 1)));
         return false;
     }
 
     @Override
-    public void onShowPress(MotionEvent e) {
+    public void onShowPress(GestureSampleBuffer samples) {
         // TODO Auto-generated method stub
     }
 
     @Override
     public boolean onSingleTapUp(MotionEvent e) {
-        boolean isRight = isRightSide(e.getX(), e.getY());
+        final int gesture = resolveGesture(e.getX(), e.getY(), FlingGesture.DIR_NONE,
+                FlingGesture.LENGTH_SHORT, 1, 1);
         if (mReceiver.onDoubleTapEnabled()) {
             if (mWasConsumed) {
                 mWasConsumed = false;
                 return true;
             }
             mIsDoubleTapPending = true;
-            if (isRight) {
-                mHandler.postDelayed(mDoubleTapRightTimeout, DT_TIMEOUT);
-            } else {
-                mHandler.postDelayed(mDoubleTapLeftTimeout, DT_TIMEOUT);
-            }
+            mLastTapUpTime = e.getEventTime();
+            mPendingTap = gesture;
+            // recents, if the single tap wants it, is already preloading from onDown()
+            mDoubleTapTimer.schedule(mLearnDoubleTapWindow
+                    ? mDoubleTapWindow.getWindow() : DT_TIMEOUT);
         } else {
-            if (isRight) {
-                mReceiver.onSingleRightPress();
-            } else {
-                mReceiver.onSingleLeftPress();
-            }
+            mReceiver.onGesture(gesture);
         }
         return true;
     }
 
     @Override
-    public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-        // TODO Auto-generated method stub
-        return false;
+    public boolean onScroll(GestureSampleBuffer samples, float distanceX, float distanceY) {
+        if (!mEarlySwipeCommit || mSwipeCommitted) {
+            return false;
+        }
+        mFlingSwipe.process(samples);
+        if (!mSwipePreloaded && mFlingSwipe.isDirectionSettled()) {
+            mSwipePreloaded = true;
+            mReceiver.onPreloadSwipe(getSwipeGesture());
+        }
+        // a short swipe can still grow into a long one, so only long and up
+        // swipes are dispatched early. Even those are a guess: the finger can
+        // still turn or slow down before it lifts, and onFling() would then
+        // have classified it differently from the end point
+        if (mFlingSwipe.swipeDirection != SwipeDirection.UP && !mFlingSwipe.isThisLongSwipe()) {
+            return false;
+        }
+        // a finger slower than a fling is the most likely to back out
+        samples.computeCurrentVelocity(1000, Float.MAX_VALUE);
+        if (Math.abs(samples.getVelocityX()) <= mMinFlingVelocity
+                && Math.abs(samples.getVelocityY()) <= mMinFlingVelocity) {
+            return false;
+        }
+        mSwipeCommitted = true;
+        dispatchSwipe();
+        return true;
     }
 
     @Override
@@ -239,13 +298,9 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
     }
 
     @Override
-    public void onLongPress(MotionEvent e) {
-        boolean isRight = isRightSide(e.getX(), e.getY());
-        if (isRight) {
-            mReceiver.onLongRightPress();
-        } else {
-            mReceiver.onLongLeftPress();
-        }
+    public void onLongPress(GestureSampleBuffer samples) {
+        mReceiver.onGesture(resolveGesture(samples.getDownX(), samples.getDownY(),
+                FlingGesture.DIR_NONE, FlingGesture.LENGTH_LONG, 1, 1));
     }
 
     @Override
@@ -254,36 +309,68 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
     }
 
     @Override
-    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
+    public boolean onFling(GestureSampleBuffer samples, float velocityX,
             float velocityY) {
-        if (e1 == null) return true;
+        if (samples.isEmpty()) return true;
+
+        mFlingSwipe.process(samples);
+        // learn from where the swipe really ended, early commits included
+        if (mAdaptiveLongSwipe && mFlingSwipe.swipeDirection != SwipeDirection.UP) {
+            mSwipeStats.addSwipe(mFlingSwipe.thresholdSlot, mFlingSwipe.horizontalSwipePercent);
+        }
+        if (!mSwipeCommitted) {
+            dispatchSwipe();
+        }
+        return true;
+    }
 
-        mFlingSwipe.process(e1, e2);
+    private void dispatchSwipe() {
+        if (mFlingSwipe.swipeDirection != null) {
+            mReceiver.onGesture(getSwipeGesture());
+        }
+    }
 
+    private int getSwipeGesture() {
+        final int direction;
         if (mFlingSwipe.swipeDirection == SwipeDirection.UP) {
-            if (mFlingSwipe.isSwipeOnRight()) {
-                mReceiver.onUpRightSwipe();
-            } else {
-                mReceiver.onUpLeftSwipe();
-            }
+            direction = FlingGesture.DIR_UP;
         } else if (mFlingSwipe.swipeDirection == SwipeDirection.LEFT) {
-            if (mFlingSwipe.isThisLongSwipe()) {
-                mReceiver.onLongLeftSwipe();
-            } else {
-                mReceiver.onShortLeftSwipe();
-            }
-        } else if (mFlingSwipe.swipeDirection == SwipeDirection.RIGHT) {
-            if (mFlingSwipe.isThisLongSwipe()) {
-                mReceiver.onLongRightSwipe();
-            } else {
-                mReceiver.onShortRightSwipe();
+            direction = FlingGesture.DIR_LEFT;
+        } else {
+            direction = FlingGesture.DIR_RIGHT;
+        }
+        // up swipes have no long version
+        final int length = direction != FlingGesture.DIR_UP && mFlingSwipe.isThisLongSwipe()
+                ? FlingGesture.LENGTH_LONG : FlingGesture.LENGTH_SHORT;
+        return resolveGesture(mFlingSwipe.xStart, mFlingSwipe.yStart, direction, length,
+                mFlingSwipe.fingers, 1);
+    }
+
+    /*
+     * Gesture id for a gesture starting at x, y. The center zone is only
+     * used when it is configured and has an action for this gesture,
+     * otherwise the bar splits into left and right halves like it always has
+     */
+    private int resolveGesture(float x, float y, int direction, int length, int fingers,
+            int taps) {
+        if (isInCenterZone(x, y)) {
+            final int center = FlingGesture.id(FlingGesture.ZONE_CENTER, direction, length,
+                    fingers, taps);
+            if (mReceiver.hasGesture(center)) {
+                return center;
             }
         }
-        return true;
+        return FlingGesture.id(isRightSide(x, y) ? FlingGesture.ZONE_RIGHT
+                : FlingGesture.ZONE_LEFT, direction, length, fingers, taps);
     }
 
-    private boolean isHorizontal() {
-        return mHost.getWidth() > mHost.getHeight();
+    private boolean isInCenterZone(float x, float y) {
+        if (mCenterZone <= 0) {
+            return false;
+        }
+        final FlingGeometry geometry = mGeometry;
+        final float along = geometry.horizontal ? x : y;
+        return Math.abs(along - geometry.halfLength) * geometry.invLength * 2 < mCenterZone;
     }
 
     /*
@@ -293,11 +380,8 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
      * to the bottom half
      */
     private boolean isRightSide(float x, float y) {
-        final boolean isVertical = !isHorizontal();
-        float length = isVertical ? mHost.getHeight() : mHost.getWidth();
-        float pos = isVertical ? y : x;
-        length /= 2;
-        return isVertical ? pos < length : pos > length;
+        final FlingGeometry geometry = mGeometry;
+        return geometry.horizontal ? x > geometry.halfLength : y < geometry.halfLength;
     }
 
     private void updateSettings() {
@@ -349,14 +433,19 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
     private class FlingSwipe {
         // minimum amount of bar to swipe to validate a vertical swipe
         private static final float VERTICAL_SWIPE_THRESHOLD = 0.80f;
-        // Maximum swipe angle before fall over into non-vertical swipes
-        private static final double VERTICAL_SWIPE_DEGREES = 30.0d;
+        // side to side travel, in bar lengths, before a swipe direction is settled
+        private static final float DIRECTION_SETTLED_PERCENT = 0.10f;
+        // Maximum swipe angle before fall over into non-vertical swipes, as the
+        // tangent so the check is a multiply: along bar <= tan * across bar
+        private static final float VERTICAL_SWIPE_TAN = (float) Math.tan(Math.toRadians(30.0d));
 
         // direction of swipe, either actual or treated as such (vertical bar)
         private SwipeDirection swipeDirection;
 
-        // was vertical swipe on right/left side
-        private boolean mVerticalSwipeOnRight;
+        // where the swipe started and the most fingers it used
+        private float xStart;
+        private float yStart;
+        private int fingers;
 
         // Between -1.0 to 1.0  - percent of bar swiped - however we expose only absolute value -
         // direction should be checked with getSwipeDirection
@@ -368,28 +457,35 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
 
         // the default or user set long swipe threshold for this long swipe event
         private float longSwipeThreshold;
+        // which SwipeStats slot longSwipeThreshold came from
+        private int thresholdSlot;
+
+        // travel along the bar and across it, in pixels
+        private float mLongAxisDist;
+        private float mShortAxisDist;
 
         public FlingSwipe(){}
 
-        void process(MotionEvent start, MotionEvent end) {
+        void process(GestureSampleBuffer samples) {
             // bar and device states
-            final boolean isNavbarHorizontal = isHorizontal();
-            final boolean isLandscape = DUActionUtils.isLandscape(mContext);
-            final float xStart = start.getX();
-            final float yStart = start.getY();
-            final float xDist = end.getX() - xStart;
-            final float yDist = end.getY() - yStart;
+            final FlingGeometry geometry = mGeometry;
+            final boolean isNavbarHorizontal = geometry.horizontal;
+            final boolean isLandscape = geometry.landscape;
+            xStart = samples.getDownX();
+            yStart = samples.getDownY();
+            fingers = samples.getMaxPointerCount();
+            final float xDist = samples.getDistanceX();
+            final float yDist = samples.getDistanceY();
+            swipeDirection = null;
+            mLongAxisDist = Math.abs(isNavbarHorizontal ? xDist : yDist);
+            mShortAxisDist = Math.abs(isNavbarHorizontal ? yDist : xDist);
 
             // how much bar long side did the swipe cover
-            horizontalSwipePercent = isNavbarHorizontal ? xDist / mHost.getWidth() :
-                    yDist / mHost.getHeight();
+            horizontalSwipePercent = (isNavbarHorizontal ? xDist : yDist) * geometry.invLength;
             // how much bar short side was covered
-            verticalSwipePercent = isNavbarHorizontal ? yDist / mHost.getHeight() :
-                xDist / mHost.getWidth();
-            // which side was the swipe started from
-            mVerticalSwipeOnRight = isRightSide(xStart, yStart);
+            verticalSwipePercent = (isNavbarHorizontal ? yDist : xDist) * geometry.invBreadth;
 
-            final boolean isVerticalSwipe = validateVerticalSwipe(isNavbarHorizontal, isLandscape, xDist, yDist);
+            final boolean isVerticalSwipe = validateVerticalSwipe(isNavbarHorizontal);
             if(!isVerticalSwipe) {
                 // normal side to side flinging action
                 // first check landscape conditions
@@ -398,18 +494,22 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
                     if (isNavbarHorizontal) {
                         if (horizontalSwipePercent >= 0) {
                             swipeDirection = SwipeDirection.RIGHT;
+                            thresholdSlot = SwipeStats.SLOT_RIGHT_LAND;
                             longSwipeThreshold = mRightLand;
                         } else {
                             swipeDirection = SwipeDirection.LEFT;
+                            thresholdSlot = SwipeStats.SLOT_LEFT_LAND;
                             longSwipeThreshold = mLeftLand;
                         }
                     } else {
                         // vertical bar on phones
                         if (horizontalSwipePercent >= 0) {
                             swipeDirection = SwipeDirection.LEFT;
+                            thresholdSlot = SwipeStats.SLOT_DOWN_VERT;
                             longSwipeThreshold = mDownVert;
                         } else {
                             swipeDirection = SwipeDirection.RIGHT;
+                            thresholdSlot = SwipeStats.SLOT_UP_VERT;
                             longSwipeThreshold = mUpVert;
                         }
                     }
@@ -417,28 +517,34 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
                     // portrait orientation
                     if (horizontalSwipePercent >= 0) {
                         swipeDirection = SwipeDirection.RIGHT;
+                        thresholdSlot = SwipeStats.SLOT_RIGHT_PORT;
                         longSwipeThreshold = mRightPort;
                     } else {
                         swipeDirection = SwipeDirection.LEFT;
+                        thresholdSlot = SwipeStats.SLOT_LEFT_PORT;
                         longSwipeThreshold = mLeftPort;
                     }
                 }
+                if (mAdaptiveLongSwipe) {
+                    longSwipeThreshold = mSwipeStats.getThreshold(thresholdSlot,
+                            longSwipeThreshold);
+                }
             }
         }
 
-        private boolean validateVerticalSwipe(boolean isHorizontal, boolean isLandscape, float xDistance, float yDistance) {
+        private boolean validateVerticalSwipe(boolean isHorizontal) {
             // if we don't meet minimum threshold and we are too sloppy with our vertical swipe
             // return false to continue processing
             if (Math.abs(verticalSwipePercent) < VERTICAL_SWIPE_THRESHOLD) {
                 return false;
             }
-            // calculate the angle of the swipe. If the angle exceeds 30 degrees, it is an invalid
+            // If the angle of the swipe exceeds 30 degrees, it is an invalid
             // vertical swipe and the event will be handled as a long or short swipe
-            double degrees = Math.abs(Math.toDegrees(Math.atan(((isHorizontal ? xDistance : yDistance) / (isHorizontal ? yDistance : xDistance)))));
             if(DEBUG) {
-                Log.e(TAG, "Validating a vertical swipe of " + String.valueOf(degrees) + " degrees");
+                Log.e(TAG, "Validating a vertical swipe of " + mLongAxisDist + "px along, "
+                        + mShortAxisDist + "px across");
             }
-            if (degrees > VERTICAL_SWIPE_DEGREES) {
+            if (mLongAxisDist > mShortAxisDist * VERTICAL_SWIPE_TAN) {
                 return false;
             }
             // conditions which must be met for a valid vertical swipe
@@ -451,12 +557,20 @@ public class FlingGestureHandler implements OnGestureListener, SmartObservable {
             return false;
         }
 
-        public boolean isThisLongSwipe() {
-            return Math.abs(horizontalSwipePercent) > longSwipeThreshold;
+        /**
+         * @return true once the swipe so far can only end in its current direction
+         */
+        public boolean isDirectionSettled() {
+            if (swipeDirection == SwipeDirection.UP) {
+                return true;
+            }
+            return swipeDirection != null
+                    && Math.abs(horizontalSwipePercent) >= DIRECTION_SETTLED_PERCENT
+                    && mLongAxisDist > mShortAxisDist * 2;
         }
 
-        public boolean isSwipeOnRight() {
-            return mVerticalSwipeOnRight;
+        public boolean isThisLongSwipe() {
+            return Math.abs(horizontalSwipePercent) > longSwipeThreshold;
         }
     }
 }
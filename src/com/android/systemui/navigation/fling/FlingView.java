@@ -333,6 +333,7 @@ public class FlingView extends BaseNavigationBar {
     @Override
     public void reorient() {
         super.reorient();
+        mGestureHandler.updateGeometry();
         mBarTransitions.init();
         final FlingLogoView logo = getFlingLogo();
         mLogoController.setLogoView(logo);
@@ -383,6 +384,7 @@ public class FlingView extends BaseNavigationBar {
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        mGestureHandler.updateGeometry();
         mRipple.onSizeChanged(w, h, oldw, oldh);
         mTrails.onSizeChanged(w, h, oldw, oldh);
     }
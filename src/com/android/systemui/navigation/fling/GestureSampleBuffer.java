@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Preallocated ring of (x, y, t) touch samples for one gesture, historical
+ * samples included. Replaces MotionEvent copies and VelocityTracker for
+ * Fling: the down point is kept aside, the newest samples live in the
+ * ring, and velocity is a least squares fit over the recent ones
+ *
+ */
+
+package com.android.systemui.navigation.fling;
+
+import android.view.MotionEvent;
+
+public class GestureSampleBuffer {
+    // power of two. A gesture only needs its start and the last ~100ms
+    private static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+    // only samples this close to the newest one count toward velocity,
+    // same horizon the framework VelocityTracker uses
+    private static final long VELOCITY_HORIZON_MILLIS = 100;
+
+    private final float[] mX = new float[CAPACITY];
+    private final float[] mY = new float[CAPACITY];
+    private final long[] mT = new long[CAPACITY];
+    // total samples added since reset, ring index is mCount & MASK
+    private int mCount;
+
+    private float mDownX;
+    private float mDownY;
+    private long mDownTime;
+    // pointer the samples follow
+    private int mPointerId = -1;
+    // most fingers down at once during the gesture
+    private int mMaxPointers;
+
+    private float mVelocityX;
+    private float mVelocityY;
+
+    /**
+     * Start a new gesture at the event's action pointer
+     */
+    public void start(MotionEvent ev) {
+        mCount = 0;
+        mVelocityX = mVelocityY = 0;
+        final int index = ev.getActionIndex();
+        mPointerId = ev.getPointerId(index);
+        mDownX = ev.getX(index);
+        mDownY = ev.getY(index);
+        mDownTime = ev.getEventTime();
+        mMaxPointers = ev.getPointerCount();
+        add(mDownX, mDownY, mDownTime);
+    }
+
+    /**
+     * Append the event's samples, historical ones first, for the tracked pointer
+     */
+    public void addMovement(MotionEvent ev) {
+        mMaxPointers = Math.max(mMaxPointers, ev.getPointerCount());
+        int index = ev.findPointerIndex(mPointerId);
+        final int history = ev.getHistorySize();
+        if (index < 0) {
+            // tracked pointer went away, follow whatever is left. Its first
+            // sample here is taken to sit where the old pointer was last seen
+            index = 0;
+            if (history > 0) {
+                switchPointer(ev.getPointerId(0), ev.getHistoricalX(0, 0),
+                        ev.getHistoricalY(0, 0));
+            } else {
+                switchPointer(ev.getPointerId(0), ev.getX(0), ev.getY(0));
+            }
+        }
+        for (int h = 0; h < history; h++) {
+            add(ev.getHistoricalX(index, h), ev.getHistoricalY(index, h),
+                    ev.getHistoricalEventTime(h));
+        }
+        add(ev.getX(index), ev.getY(index), ev.getEventTime());
+    }
+
+    /**
+     * A pointer is lifting. If it is the one we follow, continue with another
+     * one from a clean velocity window
+     */
+    public void onPointerUp(MotionEvent ev) {
+        final int upIndex = ev.getActionIndex();
+        if (ev.getPointerId(upIndex) != mPointerId || ev.getPointerCount() < 2) {
+            return;
+        }
+        final int index = upIndex == 0 ? 1 : 0;
+        add(ev.getX(upIndex), ev.getY(upIndex), ev.getEventTime());
+        switchPointer(ev.getPointerId(index), ev.getX(index), ev.getY(index));
+        add(ev.getX(index), ev.getY(index), ev.getEventTime());
+    }
+
+    /**
+     * Follow another pointer from (x, y) on. The down point moves by the
+     * offset between the two pointers, so the distance travelled so far is
+     * kept instead of jumping by the gap between the fingers
+     */
+    private void switchPointer(int pointerId, float x, float y) {
+        if (mCount > 0) {
+            mDownX += x - getLastX();
+            mDownY += y - getLastY();
+        }
+        mPointerId = pointerId;
+        mCount = 0;
+    }
+
+    private void add(float x, float y, long t) {
+        final int i = mCount & MASK;
+        mX[i] = x;
+        mY[i] = y;
+        mT[i] = t;
+        mCount++;
+    }
+
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    public int getMaxPointerCount() {
+        return mMaxPointers;
+    }
+
+    public float getDownX() {
+        return mDownX;
+    }
+
+    public float getDownY() {
+        return mDownY;
+    }
+
+    public long getDownTime() {
+        return mDownTime;
+    }
+
+    public float getLastX() {
+        return mX[(mCount - 1) & MASK];
+    }
+
+    public float getLastY() {
+        return mY[(mCount - 1) & MASK];
+    }
+
+    public long getLastTime() {
+        return mT[(mCount - 1) & MASK];
+    }
+
+    /**
+     * @return x travel from the down point to the newest sample
+     */
+    public float getDistanceX() {
+        return getLastX() - mDownX;
+    }
+
+    /**
+     * @return y travel from the down point to the newest sample
+     */
+    public float getDistanceY() {
+        return getLastY() - mDownY;
+    }
+
+    /**
+     * Fit a line through the samples inside the velocity horizon, read back
+     * with getVelocityX() and getVelocityY()
+     *
+     * @param units - 1000 for pixels per second
+     * @param maxVelocity - clamp, in the same units
+     */
+    public void computeCurrentVelocity(int units, float maxVelocity) {
+        mVelocityX = mVelocityY = 0;
+        final int available = Math.min(mCount, CAPACITY);
+        if (available < 2) {
+            return;
+        }
+        final long newest = getLastTime();
+        // times relative to the newest sample keep the sums small
+        float sumT = 0, sumTT = 0, sumX = 0, sumTX = 0, sumY = 0, sumTY = 0;
+        int n = 0;
+        for (int k = 1; k <= available; k++) {
+            final int i = (mCount - k) & MASK;
+            final float t = mT[i] - newest;
+            if (-t > VELOCITY_HORIZON_MILLIS) {
+                break;
+            }
+            sumT += t;
+            sumTT += t * t;
+            sumX += mX[i];
+            sumTX += t * mX[i];
+            sumY += mY[i];
+            sumTY += t * mY[i];
+            n++;
+        }
+        final float denom = n * sumTT - sumT * sumT;
+        if (n < 2 || denom == 0) {
+            return;
+        }
+        // least squares slope, pixels per millisecond
+        final float vx = (n * sumTX - sumT * sumX) / denom * units / 1000f;
+        final float vy = (n * sumTY - sumT * sumY) / denom * units / 1000f;
+        mVelocityX = Math.max(-maxVelocity, Math.min(maxVelocity, vx));
+        mVelocityY = Math.max(-maxVelocity, Math.min(maxVelocity, vy));
+    }
+
+    public float getVelocityX() {
+        return mVelocityX;
+    }
+
+    public float getVelocityY() {
+        return mVelocityY;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Swipe length histograms, one per long swipe threshold (direction and
+ * orientation). Once a histogram clearly has a short and a long hump, the
+ * split between them becomes the long swipe threshold for that slot, so
+ * the threshold follows how this user actually swipes. The split is
+ * Otsu's method over a fixed number of buckets, constant work per swipe.
+ * Old swipes fade out by halving the counts now and then
+ *
+ */
+
+package com.android.systemui.navigation.fling;
+
+public class SwipeStats {
+    public static final int SLOT_LEFT_LAND = 0;
+    public static final int SLOT_RIGHT_LAND = 1;
+    public static final int SLOT_LEFT_PORT = 2;
+    public static final int SLOT_RIGHT_PORT = 3;
+    public static final int SLOT_UP_VERT = 4;
+    public static final int SLOT_DOWN_VERT = 5;
+    public static final int SLOT_COUNT = 6;
+
+    // each bucket is 1/32 of the bar length
+    private static final int BUCKETS = 32;
+    // swipes needed in a slot before its histogram is trusted
+    private static final int MIN_SAMPLES = 40;
+    // halve a slot's counts when it reaches this many, recent habits win
+    private static final int DECAY_SAMPLES = 256;
+    // share of the length variance the short/long split must explain. Low
+    // values mean the user has one kind of swipe there, nothing to learn
+    private static final float MIN_SEPARATION = 0.7f;
+    // the learned threshold stays within this fraction of the user's setting
+    private static final float MAX_DRIFT = 0.5f;
+
+    private final int[][] mCounts = new int[SLOT_COUNT][BUCKETS];
+    private final int[] mTotals = new int[SLOT_COUNT];
+    // learned threshold per slot in bar lengths, negative until learned
+    private final float[] mLearned = new float[SLOT_COUNT];
+
+    public SwipeStats() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            mLearned[i] = -1f;
+        }
+    }
+
+    /**
+     * @param slot - which threshold the swipe was measured against
+     * @param percent - part of the bar length covered, sign ignored
+     */
+    public void addSwipe(int slot, float percent) {
+        final int bucket = Math.min(BUCKETS - 1, (int) (Math.abs(percent) * BUCKETS));
+        final int[] counts = mCounts[slot];
+        counts[bucket]++;
+        if (++mTotals[slot] >= DECAY_SAMPLES) {
+            int total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] >>= 1;
+                total += counts[i];
+            }
+            mTotals[slot] = total;
+        }
+        mLearned[slot] = mTotals[slot] < MIN_SAMPLES ? -1f : split(counts, mTotals[slot]);
+    }
+
+    /**
+     * @return the learned threshold for the slot, or the user's one if
+     *         nothing was learned there yet
+     */
+    public float getThreshold(int slot, float userThreshold) {
+        final float learned = mLearned[slot];
+        if (learned < 0) {
+            return userThreshold;
+        }
+        return Math.max(userThreshold * (1f - MAX_DRIFT),
+                Math.min(userThreshold * (1f + MAX_DRIFT), learned));
+    }
+
+    /**
+     * Otsu's split. Lengths are bucket indices, the result is converted
+     * back to bar lengths at the bucket boundary
+     */
+    private static float split(int[] counts, int total) {
+        float sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += i * counts[i];
+        }
+        final float mean = sum / total;
+        float totalVariance = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            final float d = i - mean;
+            totalVariance += counts[i] * d * d;
+        }
+        totalVariance /= total;
+        if (totalVariance == 0) {
+            return -1f;
+        }
+        float bestVariance = 0;
+        int best = -1;
+        int below = 0;
+        float sumBelow = 0;
+        for (int t = 1; t < BUCKETS; t++) {
+            below += counts[t - 1];
+            sumBelow += (t - 1) * counts[t - 1];
+            final int above = total - below;
+            if (below == 0 || above == 0) {
+                continue;
+            }
+            final float meanBelow = sumBelow / below;
+            final float meanAbove = (sum - sumBelow) / above;
+            final float d = meanAbove - meanBelow;
+            final float variance = (float) below * above * d * d / ((float) total * total);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                best = t;
+            }
+        }
+        if (best < 0 || bestVariance / totalVariance < MIN_SEPARATION) {
+            return -1f;
+        }
+        return (float) best / BUCKETS;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Group FFT bins into log or mel spaced bands so bars spread over the
+ * whole spectrum instead of piling up in the bass. Band edges are
+ * computed once per bin count and band count, each frame is one pass
+ * over the bins
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+public class BandMap {
+    public static final int SCALE_LINEAR = 0;
+    public static final int SCALE_LOG = 1;
+    public static final int SCALE_MEL = 2;
+
+    public static final int REDUCE_MAX = 0;
+    public static final int REDUCE_RMS = 1;
+
+    // mel spacing needs real frequencies, the Visualizer nearly always runs at this rate
+    private static final float ASSUMED_SAMPLE_RATE_HZ = 44100f;
+
+    private int[] mStart = new int[0];
+    private int[] mEnd = new int[0];
+    private int mBins;
+    private int mBands;
+    private int mScale = -1;
+
+    /**
+     * Recompute band edges if anything changed
+     *
+     * @param bins - FFT bins available, bin 0 (DC) is never used
+     * @param bands - bars to produce
+     * @param scale - SCALE_LINEAR, SCALE_LOG or SCALE_MEL
+     */
+    public void update(int bins, int bands, int scale) {
+        if (bins == mBins && bands == mBands && scale == mScale) {
+            return;
+        }
+        mBins = bins;
+        mBands = bands;
+        mScale = scale;
+        if (mStart.length < bands) {
+            mStart = new int[bands];
+            mEnd = new int[bands];
+        }
+        if (bins < 2 || bands == 0) {
+            for (int i = 0; i < bands; i++) {
+                mStart[i] = mEnd[i] = 0;
+            }
+            return;
+        }
+        final float lo = 1f;
+        final float hi = bins;
+        final float loMel = toMel(binToHz(lo, bins));
+        final float hiMel = toMel(binToHz(hi, bins));
+        int prevEnd = 1;
+        for (int i = 0; i < bands; i++) {
+            final float t = (float) (i + 1) / bands;
+            final float edge;
+            switch (scale) {
+                case SCALE_LOG:
+                    edge = lo * (float) Math.pow(hi / lo, t);
+                    break;
+                case SCALE_MEL:
+                    edge = hzToBin(fromMel(loMel + (hiMel - loMel) * t), bins);
+                    break;
+                default:
+                    edge = lo + (hi - lo) * t;
+                    break;
+            }
+            // every band gets at least one bin. When there are more bands than
+            // bins the top bands repeat the last bin
+            final int start = Math.min(prevEnd, bins - 1);
+            final int end = Math.max(start + 1, Math.min(bins, (int) edge));
+            mStart[i] = start;
+            mEnd[i] = end;
+            prevEnd = end;
+        }
+    }
+
+    public int getBandCount() {
+        return mBands;
+    }
+
+    /**
+     * Reduce dB bins into bands
+     *
+     * @param db - dB per bin, at least as many as passed to update()
+     * @param out - receives one value per band
+     * @param reduction - REDUCE_MAX or REDUCE_RMS (rms of the dB values)
+     */
+    public void reduce(float[] db, float[] out, int reduction) {
+        final int[] starts = mStart;
+        final int[] ends = mEnd;
+        for (int i = 0; i < mBands; i++) {
+            final int start = starts[i];
+            final int end = ends[i];
+            if (end <= start) {
+                out[i] = 0f;
+                continue;
+            }
+            if (reduction == REDUCE_RMS) {
+                float sum = 0f;
+                for (int k = start; k < end; k++) {
+                    sum += db[k] * db[k];
+                }
+                out[i] = (float) Math.sqrt(sum / (end - start));
+            } else {
+                float max = 0f;
+                for (int k = start; k < end; k++) {
+                    if (db[k] > max) {
+                        max = db[k];
+                    }
+                }
+                out[i] = max;
+            }
+        }
+    }
+
+    /**
+     * @return a reasonable number of bins to capture so the lowest log or
+     *         mel bands still resolve to distinct bins
+     */
+    public static int getRequiredBins(int bands, int scale) {
+        return scale == SCALE_LINEAR ? bands + 1 : bands * 4;
+    }
+
+    private static float binToHz(float bin, int bins) {
+        return bin * ASSUMED_SAMPLE_RATE_HZ / 2f / bins;
+    }
+
+    private static float hzToBin(float hz, int bins) {
+        return hz * bins * 2f / ASSUMED_SAMPLE_RATE_HZ;
+    }
+
+    private static float toMel(float hz) {
+        return 2595f * (float) Math.log10(1f + hz / 700f);
+    }
+
+    private static float fromMel(float mel) {
+        return 700f * ((float) Math.pow(10, mel / 2595f) - 1f);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Move an array of bar values toward their targets in one pass per frame,
+ * either with separate attack/decay time constants or with spring physics.
+ * Replaces one ValueAnimator per bar
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+public class BarIntegrator {
+    public static final int MODE_ATTACK_DECAY = 0;
+    public static final int MODE_SPRING = 1;
+
+    // longest step we integrate, so a stall does not make springs explode
+    private static final float MAX_STEP_SECONDS = 1f / 30f;
+    // bars closer than this (in pixels) to their target are considered settled
+    private static final float SETTLE_DISTANCE = 0.5f;
+    private static final float SETTLE_VELOCITY = 1f;
+
+    private float[] mValues = new float[0];
+    private float[] mTargets = new float[0];
+    private float[] mVelocities = new float[0];
+    private int mCount;
+
+    private int mMode = MODE_ATTACK_DECAY;
+    private float mAttackSeconds = 0.03f;
+    private float mDecaySeconds = 0.09f;
+    private float mStiffness = 600f;
+    private float mDamping = 2f * (float) Math.sqrt(600f);
+
+    private long mLastStepNanos;
+
+    public void setCount(int count) {
+        if (mValues.length < count) {
+            mValues = new float[count];
+            mTargets = new float[count];
+            mVelocities = new float[count];
+        }
+        mCount = count;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param attackMillis - time constant for bars moving up (toward louder)
+     * @param decayMillis - time constant for bars falling back
+     */
+    public void setAttackDecay(int attackMillis, int decayMillis) {
+        mMode = MODE_ATTACK_DECAY;
+        mAttackSeconds = Math.max(1, attackMillis) / 1000f;
+        mDecaySeconds = Math.max(1, decayMillis) / 1000f;
+    }
+
+    /**
+     * @param stiffness - spring constant
+     * @param dampingRatio - 1 is critically damped, below 1 lets bars bounce
+     */
+    public void setSpring(float stiffness, float dampingRatio) {
+        mMode = MODE_SPRING;
+        mStiffness = stiffness;
+        mDamping = 2f * dampingRatio * (float) Math.sqrt(stiffness);
+    }
+
+    public void setTarget(int index, float target) {
+        mTargets[index] = target;
+    }
+
+    /**
+     * Jump a bar to a value with no motion, i.e. after a size change
+     */
+    public void snapTo(int index, float value) {
+        mValues[index] = value;
+        mTargets[index] = value;
+        mVelocities[index] = 0f;
+    }
+
+    /**
+     * Forget the previous step time so the next step does not integrate
+     * over an idle gap
+     */
+    public void reset() {
+        mLastStepNanos = 0;
+    }
+
+    /**
+     * Advance all bars to the given time and write them to out[offset + i * stride]
+     *
+     * @param attackIsDecreasing - true if louder means a smaller value, i.e. bars
+     *        growing up from the bottom edge
+     * @return true if any bar is still moving and another frame is needed
+     */
+    public boolean step(long nowNanos, boolean attackIsDecreasing, float[] out, int offset,
+            int stride) {
+        float dt = mLastStepNanos == 0 ? MAX_STEP_SECONDS
+                : (nowNanos - mLastStepNanos) / 1000000000f;
+        dt = Math.max(0f, Math.min(MAX_STEP_SECONDS, dt));
+        mLastStepNanos = nowNanos;
+
+        final float[] values = mValues;
+        final float[] targets = mTargets;
+        boolean moving = false;
+        if (mMode == MODE_SPRING) {
+            final float[] velocities = mVelocities;
+            for (int i = 0; i < mCount; i++) {
+                final float delta = targets[i] - values[i];
+                // semi-implicit euler
+                velocities[i] += (delta * mStiffness - velocities[i] * mDamping) * dt;
+                values[i] += velocities[i] * dt;
+                if (Math.abs(delta) > SETTLE_DISTANCE
+                        || Math.abs(velocities[i]) > SETTLE_VELOCITY) {
+                    moving = true;
+                } else {
+                    values[i] = targets[i];
+                    velocities[i] = 0f;
+                }
+                out[offset + i * stride] = values[i];
+            }
+        } else {
+            // one exp per mode per frame, not per bar
+            final float attack = 1f - (float) Math.exp(-dt / mAttackSeconds);
+            final float decay = 1f - (float) Math.exp(-dt / mDecaySeconds);
+            for (int i = 0; i < mCount; i++) {
+                final float delta = targets[i] - values[i];
+                final boolean rising = attackIsDecreasing ? delta < 0 : delta > 0;
+                if (Math.abs(delta) > SETTLE_DISTANCE) {
+                    values[i] += delta * (rising ? attack : decay);
+                    moving = true;
+                } else {
+                    values[i] = targets[i];
+                }
+                out[offset + i * stride] = values[i];
+            }
+        }
+        if (!moving) {
+            mLastStepNanos = 0;
+        }
+        return moving;
+    }
+}
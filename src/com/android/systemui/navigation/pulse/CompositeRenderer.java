@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Stack several renderers as layers of one style, i.e. solid bars over a
+ * fading trail. Every layer is fed the same decoded FFT snapshot and
+ * waveform ring, and all layers draw in the same pass, first layer at the
+ * bottom. The controller still sees a single renderer, so there is still
+ * only one Visualizer consumer and one round of magnitude math
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Handler;
+
+public class CompositeRenderer extends Renderer {
+    private final Renderer[] mLayers;
+
+    public CompositeRenderer(Context context, Handler handler, PulseObserver callback,
+            PulseController controller, Renderer[] layers) {
+        super(context, handler, callback, controller);
+        mLayers = layers;
+        for (int i = 0; i < layers.length; i++) {
+            layers[i].setStackedAbove(i > 0);
+        }
+    }
+
+    public int getLayerCount() {
+        return mLayers.length;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].draw(canvas);
+        }
+    }
+
+    @Override
+    public int getRequiredBins() {
+        int bins = 0;
+        // capture size is shared, so the hungriest layer wins
+        for (int i = 0; i < mLayers.length; i++) {
+            bins = Math.max(bins, mLayers[i].getRequiredBins());
+        }
+        return bins == 0 ? super.getRequiredBins() : bins;
+    }
+
+    @Override
+    public boolean needsFFT() {
+        for (int i = 0; i < mLayers.length; i++) {
+            if (mLayers[i].needsFFT()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean needsWaveform() {
+        for (int i = 0; i < mLayers.length; i++) {
+            if (mLayers[i].needsWaveform()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onFFTUpdate(FFTProcessor fft) {
+        for (int i = 0; i < mLayers.length; i++) {
+            if (mLayers[i].needsFFT()) {
+                mLayers[i].onFFTUpdate(fft);
+            }
+        }
+    }
+
+    @Override
+    public void onWaveformUpdate(WaveformBuffer waveform) {
+        for (int i = 0; i < mLayers.length; i++) {
+            if (mLayers[i].needsWaveform()) {
+                mLayers[i].onWaveformUpdate(waveform);
+            }
+        }
+    }
+
+    @Override
+    public void onStreamAnalyzed(boolean isValid) {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].onStreamAnalyzed(isValid);
+        }
+    }
+
+    @Override
+    public void onVisualizerLinkChanged(boolean linked) {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].onVisualizerLinkChanged(linked);
+        }
+    }
+
+    @Override
+    public void onPowerTierChanged(int tier) {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].onPowerTierChanged(tier);
+        }
+    }
+
+    @Override
+    public void onPark() {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].onPark();
+        }
+    }
+
+    @Override
+    public void onUnpark() {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].onUnpark();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].destroy();
+        }
+    }
+
+    @Override
+    public void setLeftInLandscape(boolean leftInLandscape) {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].setLeftInLandscape(leftInLandscape);
+        }
+    }
+
+    @Override
+    public void onSizeChanged(int w, int h, int oldw, int oldh) {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].onSizeChanged(w, h, oldw, oldh);
+        }
+    }
+
+    @Override
+    public void setColors(boolean colorizedMedia, int[] colors) {
+        for (int i = 0; i < mLayers.length; i++) {
+            mLayers[i].setColors(colorizedMedia, colors);
+        }
+    }
+}
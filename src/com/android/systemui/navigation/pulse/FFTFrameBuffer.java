@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Lock-free triple buffer handing processed FFT frames from the
+ * analysis thread to the UI thread. The writer always has a back buffer
+ * to fill and the reader always has a stable front buffer to draw from,
+ * so neither side ever blocks or allocates
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FFTFrameBuffer {
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final FFTProcessor[] mBuffers = new FFTProcessor[] {
+            new FFTProcessor(), new FFTProcessor(), new FFTProcessor()
+    };
+    // index of the middle buffer, plus FRESH if the reader has not taken it yet
+    private final AtomicInteger mReady = new AtomicInteger(2);
+    // owned by the writer
+    private int mBackIndex = 0;
+    // owned by the reader
+    private int mFrontIndex = 1;
+
+    /**
+     * Writer side. Process a capture into the back buffer and publish it
+     *
+     * @return true if the reader had consumed the previous frame, meaning
+     *         the writer must notify it. false if a notification is still pending
+     */
+    public boolean publish(byte[] fft) {
+        mBuffers[mBackIndex].setCaptureTimeNanos(System.nanoTime());
+        mBuffers[mBackIndex].process(fft);
+        final int prev = mReady.getAndSet(mBackIndex | FRESH);
+        mBackIndex = prev & INDEX_MASK;
+        return (prev & FRESH) == 0;
+    }
+
+    /**
+     * Reader side. Swap the newest published frame to the front
+     *
+     * @return true if a new frame was taken, false if the front is still current
+     */
+    public boolean consume() {
+        if ((mReady.get() & FRESH) == 0) {
+            return false;
+        }
+        final int prev = mReady.getAndSet(mFrontIndex);
+        mFrontIndex = prev & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * @return the frame the reader is allowed to touch. Valid until the next consume()
+     */
+    public FFTProcessor getFront() {
+        return mBuffers[mFrontIndex];
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Turn raw Visualizer FFT captures into a reusable buffer of dB magnitudes
+ * shared by all renderers
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+public class FFTProcessor {
+    // rfk * rfk + ifk * ifk of two signed bytes never exceeds 2 * 128 * 128
+    private static final int MAX_MAGNITUDE = 2 * 128 * 128;
+    private static final float[] DB_TABLE = new float[MAX_MAGNITUDE + 1];
+
+    static {
+        // DB_TABLE[0] stays 0, same as the old "magnitude > 0" check
+        for (int i = 1; i <= MAX_MAGNITUDE; i++) {
+            DB_TABLE[i] = (float) (10 * Math.log10(i));
+        }
+    }
+
+    private float[] mDbValues = new float[0];
+    private int mBinCount;
+    private long mCaptureTimeNanos;
+
+    /**
+     * Convert one capture. Bin k is read from fft[k * 2] and fft[k * 2 + 1]
+     *
+     * @param fft - raw capture from the Visualizer
+     */
+    public void process(byte[] fft) {
+        final int bins = fft.length / 2;
+        if (mDbValues.length < bins) {
+            mDbValues = new float[bins];
+        }
+        int rfk, ifk;
+        for (int k = 0; k < bins; k++) {
+            rfk = fft[k * 2];
+            ifk = fft[k * 2 + 1];
+            mDbValues[k] = DB_TABLE[rfk * rfk + ifk * ifk];
+        }
+        mBinCount = bins;
+    }
+
+    /**
+     * @return dB magnitude per bin. Only the first getBinCount() values are valid
+     */
+    public float[] getDbValues() {
+        return mDbValues;
+    }
+
+    public int getBinCount() {
+        return mBinCount;
+    }
+
+    public void setCaptureTimeNanos(long nanos) {
+        mCaptureTimeNanos = nanos;
+    }
+
+    /**
+     * @return System.nanoTime() of the Visualizer callback that produced this frame
+     */
+    public long getCaptureTimeNanos() {
+        return mCaptureTimeNanos;
+    }
+
+    public static float toDb(int magnitude) {
+        return DB_TABLE[magnitude];
+    }
+}
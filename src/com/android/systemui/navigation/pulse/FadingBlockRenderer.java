@@ -26,6 +26,7 @@ import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.graphics.Bitmap.Config;
 import android.graphics.PorterDuff.Mode;
 import android.net.Uri;
@@ -41,16 +42,22 @@ import com.android.systemui.navigation.utils.ColorAnimator;
 
 public class FadingBlockRenderer extends Renderer implements ColorAnimator.ColorAnimationListener {
     //private static final int DEF_PAINT_ALPHA = (byte) 188;
-    private byte[] mFFTBytes;
+    // the fade multiplies the drawn part of the bitmap by this alpha every frame
+    private static final int FADE_ALPHA = 200;
+
     private Paint mPaint;
     private Paint mFadePaint;
     private boolean mVertical;
     private boolean mLeftInLandscape;
     private float[] mFFTPoints;
-    private byte rfk, ifk;
+    private final BandMap mBandMap = new BandMap();
+    private float[] mBandValues = new float[0];
+    private int mBandScale;
+    private int mBandReduction;
     private int dbValue;
-    private float magnitude;
     private int mDivisions;
+    // divisions from settings, mDivisions is this widened by the power tier
+    private int mUserDivisions;
     private int mUserColor;
     private int mAlbumColor = -1;
     private boolean mAutoColor;
@@ -59,31 +66,45 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
     private int mPathEffect1;
     private int mPathEffect2;
     private Bitmap mCanvasBitmap;
+    private Config mBitmapConfig = Config.ARGB_8888;
+    // switch to ALPHA_8 while the bars are drawn in a single color
+    private boolean mAlpha8WhenSingleColor;
+    // draws ALPHA_8 bitmaps, which take their color from the paint
+    private Paint mBitmapPaint;
     private Canvas mCanvas;
     private Matrix mMatrix;
     private int mWidth;
     private int mHeight;
 
+    // furthest any line reached since the bitmap was created
+    private int mExtent;
+    // part of the bar within mExtent, faded and invalidated each frame
+    private final Rect mBarRegion = new Rect();
+
     private ColorAnimator mLavaLamp;
     private LegacySettingsObserver mObserver;
     private boolean mLavaLampEnabled;
+    private long mLavaLampSpeed = ColorAnimator.ANIM_DEF_DURATION;
+    private int mPowerTier = PulsePowerGovernor.TIER_FULL;
     private boolean mIsValidStream;
 
-    private PulseController mController;
-
     public FadingBlockRenderer(Context context, Handler handler, PulseObserver callback,
             PulseController controller) {
-        super(context, handler, callback);
-        mController = controller;
+        super(context, handler, callback, controller);
         mObserver = new LegacySettingsObserver(handler);
-        mLavaLamp = new ColorAnimator();
-        mLavaLamp.setColorAnimatorListener(this);
+        mLavaLamp = controller.getLavaLamp();
+        mLavaLamp.addColorAnimatorListener(this);
         mPaint = new Paint();
         mFadePaint = new Paint();
-        mFadePaint.setColor(Color.argb(200, 255, 255, 255));
+        mFadePaint.setColor(Color.argb(FADE_ALPHA, 255, 255, 255));
         mFadePaint.setXfermode(new PorterDuffXfermode(Mode.MULTIPLY));
         mMatrix = new Matrix();
         mDbFuzz = mContext.getResources().getInteger(R.integer.config_pulseDbFuzz);
+        mAlpha8WhenSingleColor = mContext.getResources()
+                .getInteger(R.integer.config_pulseFadingBitmapConfig) == 1;
+        mBitmapPaint = new Paint();
+        mBandScale = mContext.getResources().getInteger(R.integer.config_pulseBandScale);
+        mBandReduction = mContext.getResources().getInteger(R.integer.config_pulseBandReduction);
         mObserver.updateSettings();
         mPaint.setAntiAlias(true);
         onSizeChanged(0, 0, 0, 0);
@@ -94,44 +115,113 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
         mIsValidStream = isValid;
         if (isValid) {
             onSizeChanged(0, 0, 0, 0);
-            if (mLavaLampEnabled) {
-                mLavaLamp.start();
+            updateLavaLamp();
+        }
+    }
+
+    private void updateLavaLamp() {
+        updateBitmapConfig();
+        // the lava lamp is shared between renderers, only the one showing a
+        // stream gets to drive it
+        if (!mIsValidStream) {
+            return;
+        }
+        if (mLavaLampEnabled && PulsePowerGovernor.allowsLavaLamp(mPowerTier)) {
+            // stacked, the bottom layer runs the lamp at one speed for all
+            if (!isStackedAbove()) {
+                mLavaLamp.setAnimationTime(mLavaLampSpeed);
+                if (!mLavaLamp.isRunning()) {
+                    mLavaLamp.start();
+                }
             }
+        } else {
+            if (!isStackedAbove()) {
+                mLavaLamp.stop();
+            }
+            // the tier may block the lamp before it ever ran
+            mPaint.setColor(mAutoColor && mAlbumColor != -1 ? mAlbumColor : mUserColor);
         }
     }
 
     @Override
-    public void onFFTUpdate(byte[] bytes) {
-        mFFTBytes = bytes;
-        if (mFFTBytes != null) {
-            if (mFFTPoints == null || mFFTPoints.length < mFFTBytes.length * 4) {
-                mFFTPoints = new float[mFFTBytes.length * 4];
+    public void onFFTUpdate(FFTProcessor fft) {
+        final float[] db = fft.getDbValues();
+        // mDivisions is always even, so each stride lands on a whole bin
+        final int binStride = mDivisions / 2;
+        final boolean banded = mBandScale != BandMap.SCALE_LINEAR;
+        final int lines;
+        if (banded) {
+            // one band per line that fits on the bar, spread over the whole spectrum
+            lines = getVisibleLines();
+            if (mBandValues.length < lines) {
+                mBandValues = new float[lines];
             }
-            for (int i = 0; i < mFFTBytes.length / mDivisions; i++) {
-                if (mVertical) {
-                    mFFTPoints[i * 4 + 1] = i * 4 * mDivisions;
-                    mFFTPoints[i * 4 + 3] = i * 4 * mDivisions;
-                } else {
-                    mFFTPoints[i * 4] = i * 4 * mDivisions;
-                    mFFTPoints[i * 4 + 2] = i * 4 * mDivisions;
-                }
-                rfk = mFFTBytes[mDivisions * i];
-                ifk = mFFTBytes[mDivisions * i + 1];
-                magnitude = (rfk * rfk + ifk * ifk);
-                dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
-                if (mVertical) {
-                    mFFTPoints[i * 4] = mLeftInLandscape ? 0 : mWidth;
-                    mFFTPoints[i * 4 + 2] = mLeftInLandscape ? (dbValue * mDbFuzzFactor + mDbFuzz)
-                            : (mWidth - (dbValue * mDbFuzzFactor + mDbFuzz));
-                } else {
-                    mFFTPoints[i * 4 + 1] = mHeight;
-                    mFFTPoints[i * 4 + 3] = mHeight - (dbValue * mDbFuzzFactor + mDbFuzz);
-                }
+            mBandMap.update(fft.getBinCount(), lines, mBandScale);
+            mBandMap.reduce(db, mBandValues, mBandReduction);
+        } else {
+            lines = fft.getBinCount() * 2 / mDivisions;
+        }
+        if (mFFTPoints == null || mFFTPoints.length < lines * 4) {
+            mFFTPoints = new float[lines * 4];
+        }
+        final float[] points = mFFTPoints;
+        int frameExtent = 0;
+        for (int i = 0; i < lines; i++) {
+            if (mVertical) {
+                points[i * 4 + 1] = i * 4 * mDivisions;
+                points[i * 4 + 3] = i * 4 * mDivisions;
+            } else {
+                points[i * 4] = i * 4 * mDivisions;
+                points[i * 4 + 2] = i * 4 * mDivisions;
+            }
+            dbValue = (int) (banded ? mBandValues[i] : db[binStride * i]);
+            final int length = dbValue * mDbFuzzFactor + mDbFuzz;
+            if (length > frameExtent) {
+                frameExtent = length;
+            }
+            if (mVertical) {
+                points[i * 4] = mLeftInLandscape ? 0 : mWidth;
+                points[i * 4 + 2] = mLeftInLandscape ? length : (mWidth - length);
+            } else {
+                points[i * 4 + 1] = mHeight;
+                points[i * 4 + 3] = mHeight - length;
             }
         }
-        mCanvas.drawLines(mFFTPoints, mPaint);
-        mCanvas.drawPaint(mFadePaint);
-        postInvalidate();
+        mCanvas.drawLines(points, 0, lines * 4, mPaint);
+        // faded pixels linger wherever a line has ever been, past that the
+        // bitmap is still transparent and there is nothing to fade
+        mExtent = Math.max(mExtent, frameExtent);
+        updateBarRegion(mExtent);
+        mCanvas.drawRect(mBarRegion, mFadePaint);
+        postInvalidate(mBarRegion.left, mBarRegion.top, mBarRegion.right, mBarRegion.bottom);
+    }
+
+    private void updateBarRegion(int extent) {
+        if (!mVertical) {
+            mBarRegion.set(0, Math.max(0, mHeight - extent), mWidth, mHeight);
+        } else if (mLeftInLandscape) {
+            mBarRegion.set(0, 0, Math.min(mWidth, extent), mHeight);
+        } else {
+            mBarRegion.set(Math.max(0, mWidth - extent), 0, mWidth, mHeight);
+        }
+    }
+
+    private void updateDivisions() {
+        final int oldDivisions = mDivisions;
+        // stays even, so line strides still land on whole bins
+        mDivisions = mUserDivisions * PulsePowerGovernor.getBarDivisor(mPowerTier);
+        if (oldDivisions != 0 && oldDivisions != mDivisions) {
+            notifyCaptureRequirementsChanged();
+        }
+    }
+
+    @Override
+    public void onPowerTierChanged(int tier) {
+        if (mPowerTier != tier) {
+            mPowerTier = tier;
+            updateDivisions();
+            updateLavaLamp();
+        }
     }
 
     @Override
@@ -140,11 +230,65 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
             mWidth = mCallback.getWidth();
             mHeight = mCallback.getHeight();
             mVertical = mHeight > mWidth;
-            mCanvasBitmap = Bitmap.createBitmap(mWidth, mHeight, Config.ARGB_8888);
+            loadCanvasBitmap();
+            mExtent = 0;
+            notifyCaptureRequirementsChanged();
+        }
+    }
+
+    private void loadCanvasBitmap() {
+        if (mCanvasBitmap != null && mCanvasBitmap.getWidth() == mWidth
+                && mCanvasBitmap.getHeight() == mHeight
+                && mCanvasBitmap.getConfig() == mBitmapConfig) {
+            // same size, i.e. a layout pass or landscape side change. Just wipe it
+            mCanvasBitmap.eraseColor(Color.TRANSPARENT);
+            return;
+        }
+        final PulseBitmapPool pool = mController.getBitmapPool();
+        pool.release(mCanvasBitmap);
+        mCanvasBitmap = pool.obtain(mWidth, mHeight, mBitmapConfig);
+        if (mCanvas == null) {
             mCanvas = new Canvas(mCanvasBitmap);
+        } else {
+            mCanvas.setBitmap(mCanvasBitmap);
+        }
+    }
+
+    /**
+     * An ALPHA_8 trail takes the current paint color as a whole, so it is
+     * only used while nothing changes the color from frame to frame
+     */
+    private void updateBitmapConfig() {
+        final boolean singleColor = !mLavaLampEnabled
+                || !PulsePowerGovernor.allowsLavaLamp(mPowerTier);
+        final Config config = mAlpha8WhenSingleColor && singleColor
+                ? Config.ALPHA_8 : Config.ARGB_8888;
+        if (mBitmapConfig != config) {
+            mBitmapConfig = config;
+            if (mCanvasBitmap != null) {
+                loadCanvasBitmap();
+                mExtent = 0;
+            }
         }
     }
 
+    @Override
+    public int getRequiredBins() {
+        if (mWidth == 0 || mHeight == 0) {
+            return super.getRequiredBins();
+        }
+        if (mBandScale != BandMap.SCALE_LINEAR) {
+            return BandMap.getRequiredBins(getVisibleLines(), mBandScale);
+        }
+        // line i sits at i * 4 * mDivisions and reads bin i * mDivisions / 2,
+        // so anything past length / 8 is drawn off the bar
+        return (mVertical ? mHeight : mWidth) / 8 + 1;
+    }
+
+    private int getVisibleLines() {
+        return (mVertical ? mHeight : mWidth) / (4 * mDivisions) + 1;
+    }
+
     @Override
     public void onColorChanged(ColorAnimator colorAnimator, int color) {
         mPaint.setColor(color);
@@ -167,11 +311,31 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
         }
     }
 
+    @Override
+    public void onPark() {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mLavaLamp.removeColorAnimatorListener(this);
+    }
+
+    @Override
+    public void onUnpark() {
+        mObserver.register();
+        mLavaLamp.addColorAnimatorListener(this);
+        mObserver.updateSettings();
+    }
+
     @Override
     public void destroy() {
         mContext.getContentResolver().unregisterContentObserver(mObserver);
-        mLavaLamp.stop();
-        mCanvasBitmap = null;
+        mLavaLamp.removeColorAnimatorListener(this);
+        if (mIsValidStream) {
+            mLavaLamp.stop();
+        }
+        if (mCanvasBitmap != null) {
+            mCanvas.setBitmap(null);
+            mController.getBitmapPool().release(mCanvasBitmap);
+            mCanvasBitmap = null;
+        }
     }
 
     @Override
@@ -183,7 +347,16 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
 
     @Override
     public void draw(Canvas canvas) {
-        canvas.drawBitmap(mCanvasBitmap, mMatrix, null);
+        if (mCanvasBitmap == null) {
+            return;
+        }
+        if (mBitmapConfig == Config.ALPHA_8) {
+            // the mask already carries the line alpha, only take the color
+            mBitmapPaint.setColor(mPaint.getColor() | 0xff000000);
+            canvas.drawBitmap(mCanvasBitmap, mMatrix, mBitmapPaint);
+        } else {
+            canvas.drawBitmap(mCanvasBitmap, mMatrix, null);
+        }
     }
 
     /*private int applyPaintAlphaToColor(int color) {
@@ -261,12 +434,8 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
             int time = Settings.Secure.getIntForUser(resolver,
                     Settings.Secure.FLING_PULSE_LAVALAMP_SPEED, 10000,
                     UserHandle.USER_CURRENT);
-            mLavaLamp.setAnimationTime(time);
-            if (mLavaLampEnabled && mIsValidStream) {
-                mLavaLamp.start();
-            } else {
-                mLavaLamp.stop();
-            }
+            mLavaLampSpeed = time;
+            updateLavaLamp();
             int emptyBlock = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_EMPTY_BLOCK_SIZE, 1,
                     UserHandle.USER_CURRENT);
@@ -291,7 +460,8 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
                     mPathEffect2
             }, 0));
             mPaint.setStrokeWidth(getLimitedDimenValue(customDimen, 1, 30, res));
-            mDivisions = validateDivision(numDivision);
+            mUserDivisions = validateDivision(numDivision);
+            updateDivisions();
             mDbFuzzFactor = Math.max(2, Math.min(6, fudgeFactor));
         }
     }
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Inputs that decide whether Pulse should hold a visualizer link, packed
+ * into a bit set. Events only flip bits and ask for an evaluation, so a
+ * storm of broadcasts within one window costs a single linkage decision
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+public class LinkStateMachine {
+    public static final int FLAG_PULSE_ENABLED = 1 << 0;
+    public static final int FLAG_SCREEN_ON = 1 << 1;
+    public static final int FLAG_MEDIA_PLAYING = 1 << 2;
+    public static final int FLAG_POWER_SAVE = 1 << 3;
+    public static final int FLAG_KEYGUARD_SHOWING = 1 << 4;
+    public static final int FLAG_MUSIC_MUTED = 1 << 5;
+    public static final int FLAG_SCREEN_PINNING = 1 << 6;
+
+    // every one of these must be set to link
+    private static final int REQUIRED_FLAGS = FLAG_PULSE_ENABLED | FLAG_SCREEN_ON
+            | FLAG_MEDIA_PLAYING;
+    // any one of these forces an unlink
+    private static final int BLOCKING_FLAGS = FLAG_POWER_SAVE | FLAG_KEYGUARD_SHOWING
+            | FLAG_MUSIC_MUTED | FLAG_SCREEN_PINNING;
+
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_LINK = 1;
+    public static final int ACTION_UNLINK = 2;
+
+    private int mFlags;
+    private boolean mEvaluationPending;
+    private long mEventCount;
+    private long mEvaluationCount;
+
+    /**
+     * @return true if the flag changed
+     */
+    public boolean set(int flag, boolean on) {
+        final int flags = on ? mFlags | flag : mFlags & ~flag;
+        if (flags == mFlags) {
+            return false;
+        }
+        mFlags = flags;
+        return true;
+    }
+
+    public boolean isSet(int flag) {
+        return (mFlags & flag) != 0;
+    }
+
+    public int getFlags() {
+        return mFlags;
+    }
+
+    /**
+     * Note an input event
+     *
+     * @return true if the caller must schedule an evaluation, false if one
+     *         is already pending for this window
+     */
+    public boolean requestEvaluation() {
+        mEventCount++;
+        if (mEvaluationPending) {
+            return false;
+        }
+        mEvaluationPending = true;
+        return true;
+    }
+
+    /**
+     * @return true if the current inputs allow a visualizer link
+     */
+    public boolean shouldBeLinked() {
+        return (mFlags & REQUIRED_FLAGS) == REQUIRED_FLAGS && (mFlags & BLOCKING_FLAGS) == 0;
+    }
+
+    /**
+     * Close the current window and decide
+     *
+     * @param linked - current link state
+     * @return ACTION_LINK, ACTION_UNLINK or ACTION_NONE
+     */
+    public int evaluate(boolean linked) {
+        mEvaluationPending = false;
+        mEvaluationCount++;
+        final boolean shouldBeLinked = shouldBeLinked();
+        if (shouldBeLinked && !linked) {
+            return ACTION_LINK;
+        } else if (!shouldBeLinked && linked) {
+            return ACTION_UNLINK;
+        }
+        return ACTION_NONE;
+    }
+
+    public boolean isEvaluationPending() {
+        return mEvaluationPending;
+    }
+
+    public long getEventCount() {
+        return mEventCount;
+    }
+
+    public long getEvaluationCount() {
+        return mEvaluationCount;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Small pool of renderer canvas bitmaps. Pulse only ever needs a bitmap
+ * for the horizontal and the vertical bar, so keeping the last couple
+ * around stops rotations and renderer rebuilds from allocating a new
+ * screen wide bitmap each time. Main thread only
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+
+import java.io.PrintWriter;
+
+public class PulseBitmapPool {
+    // one per bar orientation
+    private static final int MAX_POOLED = 2;
+
+    private final Bitmap[] mPool = new Bitmap[MAX_POOLED];
+    private int mPooled;
+
+    private int mHits;
+    private int mReconfigures;
+    private int mAllocations;
+
+    /**
+     * Get a cleared bitmap. An exact size and config match is preferred,
+     * then any pooled bitmap big enough to be reconfigured in place
+     */
+    public Bitmap obtain(int width, int height, Config config) {
+        int reusable = -1;
+        for (int i = 0; i < mPooled; i++) {
+            final Bitmap b = mPool[i];
+            if (b.getWidth() == width && b.getHeight() == height && b.getConfig() == config) {
+                mHits++;
+                return take(i);
+            }
+            if (reusable == -1 && b.isMutable()
+                    && b.getAllocationByteCount() >= width * height * bytesPerPixel(config)) {
+                reusable = i;
+            }
+        }
+        if (reusable != -1) {
+            final Bitmap b = take(reusable);
+            b.reconfigure(width, height, config);
+            mReconfigures++;
+            return b;
+        }
+        mAllocations++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Hand a bitmap back. The oldest pooled bitmap is dropped if full
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (mPooled == MAX_POOLED) {
+            System.arraycopy(mPool, 1, mPool, 0, MAX_POOLED - 1);
+            mPooled--;
+        }
+        mPool[mPooled++] = bitmap;
+    }
+
+    public void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "bitmapPool pooled=" + mPooled + " hits=" + mHits
+                + " reconfigured=" + mReconfigures + " allocated=" + mAllocations);
+    }
+
+    private Bitmap take(int index) {
+        final Bitmap b = mPool[index];
+        System.arraycopy(mPool, index + 1, mPool, index, mPooled - index - 1);
+        mPool[--mPooled] = null;
+        b.eraseColor(Color.TRANSPARENT);
+        return b;
+    }
+
+    private static int bytesPerPixel(Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
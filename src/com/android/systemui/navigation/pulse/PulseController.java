@@ -26,6 +26,8 @@ package com.android.systemui.navigation.pulse;
 
 import com.android.systemui.navigation.pulse.PulseController;
 
+import java.io.PrintWriter;
+
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
@@ -47,11 +49,15 @@ import android.provider.Settings;
 import android.util.Log;
 import android.view.animation.Animation;
 
+import com.android.systemui.R;
+import com.android.systemui.navigation.utils.ColorAnimator;
+
 public class PulseController {
     public interface PulseObserver {
         public int getWidth();
         public int getHeight();
         public void postInvalidate();
+        public void postInvalidate(int left, int top, int right, int bottom);
 
         // return false to immediately begin Pulse
         // return true to do pre-processing. Implementation MUST
@@ -61,53 +67,122 @@ public class PulseController {
     }
 
     private static final String TAG = PulseController.class.getSimpleName();
-    private static final int RENDER_STYLE_LEGACY = 0;
-    private static final int RENDER_STYLE_CM = 1;
 
     private Context mContext;
     private Handler mHandler;
     private AudioManager mAudioManager;
-    private Renderer mRenderer;
+    private volatile Renderer mRenderer;
+    // style mRenderer was obtained for
+    private int mRendererStyle;
+    private RendererRegistry mRendererRegistry;
     private VisualizerStreamHandler mStreamHandler;
+    private final FFTFrameBuffer mFrameBuffer = new FFTFrameBuffer();
+    private final WaveformBuffer mWaveformBuffer = new WaveformBuffer();
+    private PulseFrameScheduler mFrameScheduler;
+    private final PulseBitmapPool mBitmapPool = new PulseBitmapPool();
+    // one lava lamp shared by every renderer
+    private final ColorAnimator mLavaLamp = new ColorAnimator();
+    private PulsePowerGovernor mPowerGovernor;
+    // false keeps Pulse linked in power save, the governor drops it to a low tier instead
+    private boolean mUnlinkInPowerSave;
+    // renderer update time accumulated since the last draw
+    private long mFrameWorkNanos;
+    private final PulseStats mStats = new PulseStats();
+    private PulseStats.RendererStats mRendererStats;
+    // capture time of the newest frame already counted in the latency histogram
+    private long mLastDrawnCaptureNanos;
     private PulseObserver mPulseObserver;
     private SettingsObserver mSettingsObserver;
     private Bitmap mAlbumArt;
     private int mAlbumArtColor = -1;
-    private boolean mPulseEnabled;
-    private boolean mKeyguardShowing;
-    private boolean mLinked;
-    private boolean mPowerSaveModeEnabled;
-    private boolean mScreenOn;
-    private boolean mMusicStreamMuted;
     private boolean mLeftInLandscape;
-    private boolean mScreenPinningEnabled;
     private int mPulseStyle;
-    private boolean mIsMediaPlaying;
+
+    private final PulseLinkage mLinkage;
+    // music stream state cached from broadcast extras
+    private int mMusicVolume;
+    private boolean mMusicMuteFlag;
+
+    private final PulsePowerGovernor.Callback mPowerTierCallback =
+            new PulsePowerGovernor.Callback() {
+        @Override
+        public void onPowerTierChanged(int tier) {
+            applyPowerTier(tier);
+        }
+    };
+
+    private final PulseFrameScheduler.RefreshRateListener mRefreshRateListener =
+            new PulseFrameScheduler.RefreshRateListener() {
+        @Override
+        public void onRefreshRateChanged(float refreshRate) {
+            mPowerGovernor.setRefreshRate(refreshRate);
+        }
+    };
+
+    private void applyPowerTier(int tier) {
+        mFrameScheduler.setFpsCap(PulsePowerGovernor.getFpsCap(tier));
+        mStreamHandler.setMinQualityStep(PulsePowerGovernor.getMinQualityStep(tier));
+        if (mRenderer != null) {
+            mRenderer.onPowerTierChanged(tier);
+        }
+    }
+
+    private final Runnable mLinkageRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mLinkage.evaluate();
+        }
+    };
+
+    private final PulseLinkage.Callback mLinkageCallback = new PulseLinkage.Callback() {
+        @Override
+        public void scheduleEvaluation(long delayMillis) {
+            mHandler.postDelayed(mLinkageRunnable, delayMillis);
+        }
+
+        @Override
+        public void cancelEvaluation() {
+            mHandler.removeCallbacks(mLinkageRunnable);
+        }
+
+        @Override
+        public void onLink() {
+            doLinkVisualizer();
+        }
+
+        @Override
+        public void onUnlink(boolean silent) {
+            if (silent) {
+                doSilentUnlinkVisualizer();
+            } else {
+                doUnlinkVisualizerInternal();
+            }
+        }
+    };
 
     public void onReceive(Intent intent) {
-        if (PowerManager.ACTION_POWER_SAVE_MODE_CHANGING.equals(intent.getAction())) {
-            mPowerSaveModeEnabled = intent.getBooleanExtra(PowerManager.EXTRA_POWER_SAVE_MODE,
+        final String action = intent.getAction();
+        if (PowerManager.ACTION_POWER_SAVE_MODE_CHANGING.equals(action)) {
+            final boolean powerSave = intent.getBooleanExtra(PowerManager.EXTRA_POWER_SAVE_MODE,
                     false);
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    doLinkage();
-                }
-            });
-        } else if (AudioManager.STREAM_MUTE_CHANGED_ACTION.equals(intent.getAction())
-                || (AudioManager.VOLUME_CHANGED_ACTION.equals(intent.getAction()))) {
+            mPowerGovernor.setPowerSaveMode(powerSave);
+            mLinkage.setInput(LinkStateMachine.FLAG_POWER_SAVE, powerSave && mUnlinkInPowerSave);
+        } else if (Intent.ACTION_BATTERY_CHANGED.equals(action)) {
+            mPowerGovernor.onBatteryChanged(intent);
+        } else if (AudioManager.STREAM_MUTE_CHANGED_ACTION.equals(action)
+                || AudioManager.VOLUME_CHANGED_ACTION.equals(action)) {
             int streamType = intent.getIntExtra(AudioManager.EXTRA_VOLUME_STREAM_TYPE, -1);
             if (streamType == AudioManager.STREAM_MUSIC) {
-                boolean muted = isMusicMuted(streamType);
-                if (mMusicStreamMuted != muted) {
-                    mMusicStreamMuted = muted;
-                    mHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            doLinkage();
-                        }
-                    });
+                // read the new state from the extras instead of querying AudioManager
+                if (AudioManager.VOLUME_CHANGED_ACTION.equals(action)) {
+                    mMusicVolume = intent.getIntExtra(AudioManager.EXTRA_VOLUME_STREAM_VALUE,
+                            mMusicVolume);
+                } else {
+                    mMusicMuteFlag = intent.getBooleanExtra(
+                            AudioManager.EXTRA_STREAM_VOLUME_MUTED, mMusicMuteFlag);
                 }
+                mLinkage.setInput(LinkStateMachine.FLAG_MUSIC_MUTED,
+                        mMusicMuteFlag || mMusicVolume == 0);
             }
         }
     }
@@ -115,6 +190,11 @@ public class PulseController {
     private final VisualizerStreamHandler.Listener mStreamListener = new VisualizerStreamHandler.Listener() {
         @Override
         public void onStreamAnalyzed(boolean isValid) {
+            if (isValid) {
+                mStats.mStreamValidCount++;
+            } else {
+                mStats.mStreamInvalidCount++;
+            }
             if (mRenderer != null) {
                 mRenderer.onStreamAnalyzed(isValid);
             }
@@ -123,21 +203,51 @@ public class PulseController {
                     turnOnPulse();
                 }
             } else {
-                doSilentUnlinkVisualizer();
+                mLinkage.unlink(true);
             }
         }
 
         @Override
         public void onFFTUpdate(byte[] bytes) {
-            if (mRenderer != null) {
-                mRenderer.onFFTUpdate(bytes);
+            // analysis thread: do the magnitude math here and only wake
+            // the main thread if it already took the last frame
+            if (mFrameBuffer.publish(bytes)) {
+                mHandler.post(mFrameRunnable);
             }
         }
 
         @Override
         public void onWaveFormUpdate(byte[] bytes) {
-            if (mRenderer != null) {
-                mRenderer.onWaveFormUpdate(bytes);
+            // analysis thread: copy out of the Visualizer's array
+            if (mWaveformBuffer.write(bytes)) {
+                mHandler.post(mWaveformRunnable);
+            }
+        }
+    };
+
+    private final Runnable mWaveformRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mWaveformBuffer.onNotified();
+            if (mRenderer != null && shouldDrawPulse()) {
+                final long start = System.nanoTime();
+                mRenderer.onWaveformUpdate(mWaveformBuffer);
+                final long elapsed = System.nanoTime() - start;
+                mFrameWorkNanos += elapsed;
+                mRendererStats.mWaveformUpdate.record(elapsed);
+            }
+        }
+    };
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mFrameBuffer.consume() && mRenderer != null && shouldDrawPulse()) {
+                final long start = System.nanoTime();
+                mRenderer.onFFTUpdate(mFrameBuffer.getFront());
+                final long elapsed = System.nanoTime() - start;
+                mFrameWorkNanos += elapsed;
+                mRendererStats.mFFTUpdate.record(elapsed);
             }
         }
     };
@@ -160,7 +270,6 @@ public class PulseController {
         public void onChange(boolean selfChange, Uri uri) {
             if (uri.equals(Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_ENABLED))) {
                 updateEnabled();
-                doLinkage();
             } else if (uri.equals(Settings.Secure.getUriFor(Settings.Secure.PULSE_RENDER_STYLE_URI))) {
                 updateRenderMode();
                 if (mPulseObserver != null) {
@@ -175,33 +284,55 @@ public class PulseController {
         }
 
         void updateEnabled() {
-            mPulseEnabled = Settings.Secure.getIntForUser(mContext.getContentResolver(),
-                    Settings.Secure.FLING_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
+            mLinkage.setInput(LinkStateMachine.FLAG_PULSE_ENABLED,
+                    Settings.Secure.getIntForUser(mContext.getContentResolver(),
+                    Settings.Secure.FLING_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) == 1);
         }
 
         void updateRenderMode() {
             mPulseStyle = Settings.Secure.getIntForUser(mContext.getContentResolver(),
-                    Settings.Secure.PULSE_RENDER_STYLE_URI, RENDER_STYLE_CM, UserHandle.USER_CURRENT);
+                    Settings.Secure.PULSE_RENDER_STYLE_URI, RendererRegistry.RENDER_STYLE_CM,
+                    UserHandle.USER_CURRENT);
         }
     };
 
     public PulseController(Context context, Handler handler) {
         mContext = context;
         mHandler = handler;
+        mLinkage = new PulseLinkage(mLinkageCallback);
+        mRendererRegistry = new RendererRegistry(context, handler, this);
         mSettingsObserver = new SettingsObserver(handler);
         mSettingsObserver.updateSettings();
         mAudioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
-        mMusicStreamMuted = isMusicMuted(AudioManager.STREAM_MUSIC);
+        // seed the cached music state once, broadcasts keep it current after this
+        mMusicMuteFlag = mAudioManager.isStreamMute(AudioManager.STREAM_MUSIC);
+        mMusicVolume = mAudioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
+        mLinkage.setDeferredInput(LinkStateMachine.FLAG_MUSIC_MUTED, mMusicMuteFlag || mMusicVolume == 0);
 
         PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-        mPowerSaveModeEnabled = pm.isPowerSaveMode();
+        final boolean powerSave = pm.isPowerSaveMode();
+        mUnlinkInPowerSave = context.getResources()
+                .getBoolean(R.bool.config_pulseUnlinkInPowerSave);
+        mLinkage.setDeferredInput(LinkStateMachine.FLAG_POWER_SAVE, powerSave && mUnlinkInPowerSave);
+        mFrameScheduler = new PulseFrameScheduler(context, handler);
 
         mSettingsObserver.register();
         mStreamHandler = new VisualizerStreamHandler(mContext, this, mStreamListener);
+        mPowerGovernor = new PulsePowerGovernor(context, mPowerTierCallback);
+        mPowerGovernor.setPowerSaveMode(powerSave);
+        // one display listener for both, the scheduler's
+        mPowerGovernor.setRefreshRate(mFrameScheduler.getRefreshRate());
+        mFrameScheduler.setRefreshRateListener(mRefreshRateListener);
+        applyPowerTier(mPowerGovernor.getTier());
     }
 
     public void setPulseObserver(PulseObserver observer) {
+        if (mPulseObserver != observer) {
+            // parked renderers draw into the old bar
+            mRendererRegistry.clearWarm();
+        }
         mPulseObserver = observer;
+        mFrameScheduler.setObserver(observer);
         loadRenderer();
         // why not check for linkage? No need! If this is a bar
         // change, PhoneStatusBar will call notifyInflateFromUser()
@@ -216,12 +347,25 @@ public class PulseController {
         if (isRendering) {
             mStreamHandler.pause();
         }
-        if (mRenderer != null) {
-            mRenderer.destroy();
-            mRenderer = null;
+        final Renderer oldRenderer = mRenderer;
+        final int oldStyle = mRendererStyle;
+        mRenderer = null;
+        if (oldRenderer != null) {
+            if (oldStyle == mPulseStyle || oldRenderer.mCallback != mPulseObserver) {
+                // same style or a new bar. Nothing worth keeping warm
+                oldRenderer.destroy();
+            } else {
+                mRendererRegistry.recycle(oldStyle, oldRenderer, mPulseObserver);
+            }
         }
-        mRenderer = getRenderer(mPulseObserver);
+        mRendererStyle = mPulseStyle;
+        mRenderer = mRendererRegistry.obtain(mPulseStyle, mPulseObserver);
+        mRendererStats = mStats.getRendererStats(mPulseStyle, mRenderer);
         mRenderer.setLeftInLandscape(mLeftInLandscape);
+        if (mPowerGovernor != null) {
+            mRenderer.onPowerTierChanged(mPowerGovernor.getTier());
+        }
+        updateCaptureRequirements();
         if (isRendering) {
             mRenderer.onStreamAnalyzed(true);
             mStreamHandler.resume();
@@ -229,17 +373,19 @@ public class PulseController {
     }
 
     public void setScreenPinningState(boolean enabled) {
-        mScreenPinningEnabled = enabled;
+        // picked up by the next linkage evaluation
+        mLinkage.setDeferredInput(LinkStateMachine.FLAG_SCREEN_PINNING, enabled);
     }
 
     public void setKeyguardShowing(boolean showing) {
-        mKeyguardShowing = showing;
-        doLinkage();
+        mLinkage.setInput(LinkStateMachine.FLAG_KEYGUARD_SHOWING, showing);
     }
 
     public void notifyScreenOn(boolean screenOn) {
-        mScreenOn = screenOn;
-        doLinkage();
+        mLinkage.setDeferredInput(LinkStateMachine.FLAG_SCREEN_ON, screenOn);
+        // always evaluate, even if the screen state is unchanged. Bar changes
+        // rely on this to link again after a silent unlink
+        mLinkage.requestEvaluation();
     }
 
     public void setLeftInLandscape(boolean leftInLandscape) {
@@ -261,7 +407,7 @@ public class PulseController {
      * @return true if Pulse is enabled, false if not
      */
     public boolean isPulseEnabled() {
-        return mPulseEnabled;
+        return mLinkage.isSet(LinkStateMachine.FLAG_PULSE_ENABLED);
     }
 
     /**
@@ -270,7 +416,7 @@ public class PulseController {
      * @return true if bar elements should be hidden, false if not
      */
     public boolean shouldDrawPulse() {
-        return mLinked && mStreamHandler.isValidStream() && mRenderer != null;
+        return mLinkage.isLinked() && mStreamHandler.isValidStream() && mRenderer != null;
     }
 
     public void turnOnPulse() {
@@ -281,38 +427,69 @@ public class PulseController {
 
     public void onDraw(Canvas canvas) {
         if (isPulseEnabled() && shouldDrawPulse()) {
+            final long start = System.nanoTime();
             mRenderer.draw(canvas);
+            final long end = System.nanoTime();
+            mRendererStats.mDraw.record(end - start);
+            final long captureNanos = mFrameBuffer.getFront().getCaptureTimeNanos();
+            if (captureNanos != 0 && captureNanos != mLastDrawnCaptureNanos) {
+                mLastDrawnCaptureNanos = captureNanos;
+                mStats.mFrameLatency.record(end - captureNanos);
+            }
+            mStreamHandler.onFrameRendered(mFrameWorkNanos + end - start);
+            mFrameWorkNanos = 0;
         }
     }
 
-    public void doUnlinkVisualizer() {
-        if (mStreamHandler != null) {
-            if (mLinked) {
-                mStreamHandler.unlink();
-                setVisualizerLocked(false);
-                mLinked = false;
-                if (mRenderer != null) {
-                    mRenderer.onVisualizerLinkChanged(false);
-                }
-                if (mPulseObserver != null) {
-                    mPulseObserver.postInvalidate();
-                    mPulseObserver.onStopPulse(null);
-                }
-            }
+    /**
+     * Renderer changed, or its settings or size changed what it reads
+     * from the FFT. Renegotiate the capture size
+     */
+    void updateCaptureRequirements() {
+        final Renderer renderer = mRenderer;
+        if (renderer != null && mStreamHandler != null) {
+            mStreamHandler.setRequiredBins(renderer.getRequiredBins());
+            mStreamHandler.setCaptureModes(renderer.needsFFT(), renderer.needsWaveform());
         }
     }
 
-    private Renderer getRenderer(PulseObserver observer) {
-        switch (mPulseStyle) {
-            case RENDER_STYLE_LEGACY:
-                return new FadingBlockRenderer(mContext, mHandler, observer, this);
-            case RENDER_STYLE_CM:
-                return new SolidLineRenderer(mContext, mHandler, observer, this);
-            default:
-                return new FadingBlockRenderer(mContext, mHandler, observer, this);
+    public void doUnlinkVisualizer() {
+        mLinkage.unlink(false);
+    }
+
+    private void doUnlinkVisualizerInternal() {
+        mStreamHandler.unlink();
+        mFrameScheduler.cancel();
+        mStats.mUnlinkCount++;
+        if (mRenderer != null) {
+            mRenderer.onVisualizerLinkChanged(false);
+        }
+        if (mPulseObserver != null) {
+            mPulseObserver.postInvalidate();
+            mPulseObserver.onStopPulse(null);
         }
     }
 
+    /**
+     * Register additional render styles here, keyed by the value of
+     * Settings.Secure.PULSE_RENDER_STYLE_URI
+     */
+    public RendererRegistry getRendererRegistry() {
+        return mRendererRegistry;
+    }
+
+    public PulseFrameScheduler getFrameScheduler() {
+        return mFrameScheduler;
+    }
+
+    public PulseBitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    public ColorAnimator getLavaLamp() {
+        return mLavaLamp;
+    }
+
     public void setLastColor(int color) {
         mAlbumArtColor = color;
     }
@@ -321,12 +498,6 @@ public class PulseController {
         return mAlbumArtColor;
     }
 
-    private boolean isMusicMuted(int streamType) {
-        return streamType == AudioManager.STREAM_MUSIC &&
-                (mAudioManager.isStreamMute(streamType) ||
-                mAudioManager.getStreamVolume(streamType) == 0);
-    }
-
     public static void setVisualizerLocked(boolean doLock) {
         try {
             IBinder b = ServiceManager.getService(Context.AUDIO_SERVICE);
@@ -337,55 +508,6 @@ public class PulseController {
         }
     }
 
-    /**
-     * if any of these conditions are met, we unlink regardless of any other states
-     *
-     * @return true if unlink is required, false if unlinking is not mandatory
-     */
-    private boolean isUnlinkRequired() {
-        return mKeyguardShowing
-                || !mScreenOn
-                || !isPulseEnabled()
-                || mPowerSaveModeEnabled
-                || mMusicStreamMuted
-                || mScreenPinningEnabled;
-    }
-
-    /**
-     * All of these conditions must be met to allow a visualizer link
-     *
-     * @return true if all conditions are met to allow link, false if and conditions are not met
-     */
-    private boolean isAbleToLink() {
-        return isPulseEnabled()
-                && mScreenOn
-                && mIsMediaPlaying
-                && !mLinked
-                && !mPowerSaveModeEnabled
-                && !mKeyguardShowing
-                && !mMusicStreamMuted
-                && !mScreenPinningEnabled;
-    }
-
-    /**
-     * Incoming event in which we need to
-     * toggle our link state.
-     */
-    private void doLinkage() {
-        if (isUnlinkRequired()) {
-            if (mLinked) {
-                // explicitly unlink
-                doUnlinkVisualizer();
-            }
-        } else {
-            if (isAbleToLink()) {
-                doLinkVisualizer();
-            } else if (mLinked) {
-                doUnlinkVisualizer();
-            }
-        }
-    }
-
     /**
      * Invalid media event not providing
      * a data stream to visualizer. Unlink
@@ -393,13 +515,9 @@ public class PulseController {
      * never happened
      */
     private void doSilentUnlinkVisualizer() {
-        if (mStreamHandler != null) {
-            if (mLinked) {
-                mStreamHandler.unlink();
-                setVisualizerLocked(false);
-                mLinked = false;
-            }
-        }
+        mStreamHandler.unlink();
+        mFrameScheduler.cancel();
+        mStats.mSilentUnlinkCount++;
     }
 
     /**
@@ -407,23 +525,15 @@ public class PulseController {
      * are confirmed
      */
     private void doLinkVisualizer() {
-        if (mStreamHandler != null) {
-            if (!mLinked) {
-                setVisualizerLocked(true);
-                mStreamHandler.link(0);
-                mLinked = true;
-                if (mRenderer != null) {
-                    mRenderer.onVisualizerLinkChanged(true);
-                }
-            }
+        mStreamHandler.link(0);
+        mStats.mLinkCount++;
+        if (mRenderer != null) {
+            mRenderer.onVisualizerLinkChanged(true);
         }
     }
 
     public void setMediaPlaying(boolean playing) {
-        if (mIsMediaPlaying != playing) {
-            mIsMediaPlaying = playing;
-            doLinkage();
-        }
+        mLinkage.setInput(LinkStateMachine.FLAG_MEDIA_PLAYING, playing);
     }
 
     public void setPulseColors(boolean colorizedMedia, int[] colors) {
@@ -431,4 +541,31 @@ public class PulseController {
             mRenderer.setColors(colorizedMedia, colors);
         }
     }
+
+    public void dump(PrintWriter pw) {
+        pw.println("  PulseController {");
+        pw.println("    enabled=" + isPulseEnabled() + " linked=" + mLinkage.isLinked()
+                + " validStream=" + mStreamHandler.isValidStream()
+                + " style=" + mPulseStyle
+                + " renderer=" + (mRenderer == null ? "null"
+                        : mRenderer.getClass().getSimpleName()));
+        final LinkStateMachine linkState = mLinkage.getState();
+        pw.println("    linkInputs=0x" + Integer.toHexString(linkState.getFlags())
+                + " shouldBeLinked=" + linkState.shouldBeLinked()
+                + " events=" + linkState.getEventCount()
+                + " evaluations=" + linkState.getEvaluationCount()
+                + " musicVolume=" + mMusicVolume + " musicMuteFlag=" + mMusicMuteFlag);
+        pw.println("    capture size=" + mStreamHandler.getCaptureSize()
+                + " rate=" + mStreamHandler.getCaptureRate()
+                + " qualityStep=" + mStreamHandler.getQualityStep()
+                + " lastValidationMs=" + mStreamHandler.getLastValidationMillis());
+        pw.println("    frames targetFps=" + mFrameScheduler.getTargetFps()
+                + " drawn=" + mFrameScheduler.getFrameCount()
+                + " coalesced=" + mFrameScheduler.getDroppedFrames()
+                + " late=" + mFrameScheduler.getLateFrames());
+        mPowerGovernor.dump(pw, "    ");
+        mBitmapPool.dump(pw, "    ");
+        mStats.dump(pw, "    ");
+        pw.println("  }");
+    }
 }
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Vsync driven frame pacing for Pulse. Any number of frame requests between
+ * two vsyncs collapse into a single invalidate, and frames are only let
+ * through on every Nth vsync so pacing stays even on 60/90/120hz panels
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.view.Choreographer;
+import android.view.Display;
+
+public class PulseFrameScheduler implements Choreographer.FrameCallback,
+        DisplayManager.DisplayListener {
+    public interface RefreshRateListener {
+        public void onRefreshRateChanged(float refreshRate);
+    }
+
+    private static final int FPS_MAX = 60;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final Choreographer mChoreographer;
+    private final DisplayManager mDisplayManager;
+    private PulseObserver mObserver;
+    private RefreshRateListener mRefreshRateListener;
+
+    private float mRefreshRate = FPS_MAX;
+    private int mFpsCap = FPS_MAX;
+    // let a frame through on every mVsyncDivisor vsync
+    private int mVsyncDivisor = 1;
+    private long mFrameIntervalNanos;
+
+    private boolean mCallbackPosted;
+    private boolean mFramePending;
+    // union of the regions requested for the pending frame, unless all of it is dirty
+    private boolean mDirtyAll;
+    private int mDirtyLeft;
+    private int mDirtyTop;
+    private int mDirtyRight;
+    private int mDirtyBottom;
+    private long mRequestTimeNanos;
+    private long mLastFrameTimeNanos;
+
+    private long mFrameCount;
+    private long mDroppedFrames;
+    private long mLateFrames;
+
+    /**
+     * Must be created on the main thread
+     */
+    public PulseFrameScheduler(Context context, Handler handler) {
+        mChoreographer = Choreographer.getInstance();
+        mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        mDisplayManager.registerDisplayListener(this, handler);
+        updateRefreshRate();
+    }
+
+    public void setObserver(PulseObserver observer) {
+        mObserver = observer;
+    }
+
+    public void setRefreshRateListener(RefreshRateListener listener) {
+        mRefreshRateListener = listener;
+    }
+
+    /**
+     * Limit the frame rate, i.e. from the PulsePowerGovernor. Never above FPS_MAX
+     */
+    public void setFpsCap(int fps) {
+        fps = Math.max(1, Math.min(FPS_MAX, fps));
+        if (mFpsCap != fps) {
+            mFpsCap = fps;
+            updatePacing();
+        }
+    }
+
+    /**
+     * Ask for an invalidate on the next paced vsync. Cheap enough to call
+     * for every FFT update, repeated calls before the frame fires are coalesced
+     */
+    public void requestFrame() {
+        mDirtyAll = true;
+        schedule();
+    }
+
+    /**
+     * Like requestFrame() but only the given region needs redrawing. Regions
+     * requested before the frame fires are merged
+     */
+    public void requestFrame(int left, int top, int right, int bottom) {
+        if (!mFramePending) {
+            mDirtyLeft = left;
+            mDirtyTop = top;
+            mDirtyRight = right;
+            mDirtyBottom = bottom;
+        } else {
+            mDirtyLeft = Math.min(mDirtyLeft, left);
+            mDirtyTop = Math.min(mDirtyTop, top);
+            mDirtyRight = Math.max(mDirtyRight, right);
+            mDirtyBottom = Math.max(mDirtyBottom, bottom);
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (mFramePending) {
+            mDroppedFrames++;
+            return;
+        }
+        mFramePending = true;
+        mRequestTimeNanos = System.nanoTime();
+        if (!mCallbackPosted) {
+            mCallbackPosted = true;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Forget any pending frame, i.e. when the visualizer unlinks
+     */
+    public void cancel() {
+        mFramePending = false;
+        mDirtyAll = false;
+        if (mCallbackPosted) {
+            mCallbackPosted = false;
+            mChoreographer.removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mCallbackPosted = false;
+        if (!mFramePending) {
+            return;
+        }
+        // allow half a vsync of slop so a slightly early vsync does not cost a whole interval
+        final long slop = mFrameIntervalNanos / mVsyncDivisor / 2;
+        if (frameTimeNanos - mLastFrameTimeNanos < mFrameIntervalNanos - slop) {
+            mCallbackPosted = true;
+            mChoreographer.postFrameCallback(this);
+            return;
+        }
+        if (frameTimeNanos - mRequestTimeNanos > mFrameIntervalNanos) {
+            mLateFrames++;
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        mFramePending = false;
+        mFrameCount++;
+        final boolean dirtyAll = mDirtyAll;
+        mDirtyAll = false;
+        if (mObserver != null) {
+            if (dirtyAll) {
+                mObserver.postInvalidate();
+            } else {
+                mObserver.postInvalidate(mDirtyLeft, mDirtyTop, mDirtyRight, mDirtyBottom);
+            }
+        }
+    }
+
+    public float getRefreshRate() {
+        return mRefreshRate;
+    }
+
+    public int getTargetFps() {
+        return Math.round(mRefreshRate / mVsyncDivisor);
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return frame requests that were folded into an already pending frame
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * @return frames that fired more than one frame interval after being requested
+     */
+    public long getLateFrames() {
+        return mLateFrames;
+    }
+
+    @Override
+    public void onDisplayAdded(int displayId) {
+    }
+
+    @Override
+    public void onDisplayRemoved(int displayId) {
+    }
+
+    @Override
+    public void onDisplayChanged(int displayId) {
+        if (displayId == Display.DEFAULT_DISPLAY) {
+            updateRefreshRate();
+        }
+    }
+
+    private void updateRefreshRate() {
+        final Display display = mDisplayManager.getDisplay(Display.DEFAULT_DISPLAY);
+        if (display != null && display.getRefreshRate() > 0
+                && display.getRefreshRate() != mRefreshRate) {
+            mRefreshRate = display.getRefreshRate();
+            if (mRefreshRateListener != null) {
+                mRefreshRateListener.onRefreshRateChanged(mRefreshRate);
+            }
+        }
+        updatePacing();
+    }
+
+    /**
+     * @return n to let every n-th vsync through, the smallest that keeps
+     *         the frame rate at or below fpsCap
+     */
+    public static int getVsyncDivisor(float refreshRate, int fpsCap) {
+        return Math.max(1, (int) Math.ceil(refreshRate / fpsCap));
+    }
+
+    private void updatePacing() {
+        mVsyncDivisor = getVsyncDivisor(mRefreshRate, mFpsCap);
+        mFrameIntervalNanos = (long) (NANOS_PER_SECOND * mVsyncDivisor / mRefreshRate);
+    }
+}
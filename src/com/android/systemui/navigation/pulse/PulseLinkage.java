@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Visualizer link state for PulseController. Owns the linkage inputs and
+ * the linked flag, and folds input events within one window into a single
+ * evaluation. Scheduling and the actual link work are left to the Callback,
+ * so this runs the same with a Handler or without one
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+public class PulseLinkage {
+    public interface Callback {
+        // run evaluate() once delayMillis from now
+        public void scheduleEvaluation(long delayMillis);
+        public void cancelEvaluation();
+        public void onLink();
+        // silent: the stream went invalid, leave the bar alone
+        public void onUnlink(boolean silent);
+    }
+
+    // events within one window are folded into one evaluation
+    public static final long WINDOW_MILLIS = 16;
+
+    private final LinkStateMachine mState = new LinkStateMachine();
+    private final Callback mCallback;
+    private boolean mLinked;
+
+    public PulseLinkage(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Update one linkage input and, if it changed, make sure an evaluation
+     * runs at the end of the current window
+     */
+    public void setInput(int flag, boolean on) {
+        if (mState.set(flag, on)) {
+            requestEvaluation();
+        }
+    }
+
+    /**
+     * Update one linkage input without asking for an evaluation. It is
+     * picked up by the next one
+     */
+    public void setDeferredInput(int flag, boolean on) {
+        mState.set(flag, on);
+    }
+
+    /**
+     * Make sure an evaluation runs at the end of the current window,
+     * whether or not any input changed
+     */
+    public void requestEvaluation() {
+        if (mState.requestEvaluation()) {
+            mCallback.scheduleEvaluation(WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * End of an event window: make one linkage decision from the
+     * current inputs
+     */
+    public void evaluate() {
+        mCallback.cancelEvaluation();
+        switch (mState.evaluate(mLinked)) {
+            case LinkStateMachine.ACTION_LINK:
+                mLinked = true;
+                mCallback.onLink();
+                break;
+            case LinkStateMachine.ACTION_UNLINK:
+                unlink(false);
+                break;
+        }
+    }
+
+    /**
+     * Drop the link now, outside of any window. The inputs are untouched,
+     * so the next evaluation links again if they still allow it
+     *
+     * @param silent - true if the bar should not be told
+     */
+    public void unlink(boolean silent) {
+        if (mLinked) {
+            mLinked = false;
+            mCallback.onUnlink(silent);
+        }
+    }
+
+    public boolean isLinked() {
+        return mLinked;
+    }
+
+    public boolean isSet(int flag) {
+        return mState.isSet(flag);
+    }
+
+    public LinkStateMachine getState() {
+        return mState;
+    }
+}
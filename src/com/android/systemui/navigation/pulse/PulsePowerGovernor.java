@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Pick a Pulse quality tier from battery level, charging state, battery
+ * temperature, power save mode and display refresh rate. Each tier caps
+ * the frame rate, thins out bars, floors the capture quality step and
+ * decides if the lava lamp may run, so Pulse can stay on when the device
+ * is low or warm instead of being switched off outright
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import com.android.systemui.R;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Resources;
+import android.os.BatteryManager;
+
+import java.io.PrintWriter;
+
+public class PulsePowerGovernor {
+    public interface Callback {
+        public void onPowerTierChanged(int tier);
+    }
+
+    public static final int TIER_FULL = 0;
+    public static final int TIER_BALANCED = 1;
+    public static final int TIER_SAVER = 2;
+    public static final int TIER_MINIMAL = 3;
+
+    private static final String[] TIER_NAMES = { "FULL", "BALANCED", "SAVER", "MINIMAL" };
+    // whole fractions of 60Hz, the scheduler can only let every n-th vsync through
+    private static final int[] FPS_CAP = { 60, 30, 30, 20 };
+    // lowest capture quality step (see VisualizerStreamHandler) allowed per tier
+    private static final int[] MIN_QUALITY_STEP = { 0, 1, 2, 3 };
+    // draw every n-th bar
+    private static final int[] BAR_DIVISOR = { 1, 1, 2, 2 };
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    private final Callback mCallback;
+    private final int mBalancedLevel;
+    private final int mSaverLevel;
+    private final int mMinimalLevel;
+    private final int mWarmDeciC;
+    private final int mHotDeciC;
+    private final boolean mThrottleHighRefresh;
+
+    private int mBatteryLevel = 100;
+    private boolean mCharging;
+    // battery temperature in tenths of a degree C, our thermal signal
+    private int mTemperature;
+    private boolean mPowerSaveMode;
+    private float mRefreshRate = DEFAULT_REFRESH_RATE;
+    private int mTier = TIER_FULL;
+    private int mTierChanges;
+
+    /**
+     * Must be created on the main thread
+     */
+    public PulsePowerGovernor(Context context, Callback callback) {
+        mCallback = callback;
+        final Resources res = context.getResources();
+        mBalancedLevel = res.getInteger(R.integer.config_pulseGovernorBalancedLevel);
+        mSaverLevel = res.getInteger(R.integer.config_pulseGovernorSaverLevel);
+        mMinimalLevel = res.getInteger(R.integer.config_pulseGovernorMinimalLevel);
+        mWarmDeciC = res.getInteger(R.integer.config_pulseGovernorWarmDeciC);
+        mHotDeciC = res.getInteger(R.integer.config_pulseGovernorHotDeciC);
+        mThrottleHighRefresh = res.getBoolean(R.bool.config_pulseGovernorThrottleHighRefresh);
+        // battery broadcast is sticky, seed from the last one
+        final Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            readBattery(battery);
+        }
+        mTier = computeTier();
+    }
+
+    /**
+     * Feed ACTION_BATTERY_CHANGED broadcasts
+     */
+    public void onBatteryChanged(Intent intent) {
+        readBattery(intent);
+        update();
+    }
+
+    /**
+     * Feed the display refresh rate, as tracked by the PulseFrameScheduler
+     */
+    public void setRefreshRate(float refreshRate) {
+        if (mRefreshRate != refreshRate) {
+            mRefreshRate = refreshRate;
+            update();
+        }
+    }
+
+    public void setPowerSaveMode(boolean enabled) {
+        if (mPowerSaveMode != enabled) {
+            mPowerSaveMode = enabled;
+            update();
+        }
+    }
+
+    public int getTier() {
+        return mTier;
+    }
+
+    public static int getFpsCap(int tier) {
+        return FPS_CAP[tier];
+    }
+
+    public static int getMinQualityStep(int tier) {
+        return MIN_QUALITY_STEP[tier];
+    }
+
+    public static int getBarDivisor(int tier) {
+        return BAR_DIVISOR[tier];
+    }
+
+    public static boolean allowsLavaLamp(int tier) {
+        return tier < TIER_SAVER;
+    }
+
+    public void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "power tier=" + TIER_NAMES[mTier]
+                + " changes=" + mTierChanges
+                + " battery=" + mBatteryLevel + "%"
+                + " charging=" + mCharging
+                + " temp=" + (mTemperature / 10f) + "C"
+                + " powerSave=" + mPowerSaveMode
+                + " refreshRate=" + mRefreshRate
+                + " fpsCap=" + FPS_CAP[mTier]
+                + " effectiveFps=" + Math.round(mRefreshRate
+                        / PulseFrameScheduler.getVsyncDivisor(mRefreshRate, FPS_CAP[mTier]))
+                + " minQualityStep=" + MIN_QUALITY_STEP[mTier]
+                + " barDivisor=" + BAR_DIVISOR[mTier]
+                + " lavaLamp=" + allowsLavaLamp(mTier));
+    }
+
+    private int computeTier() {
+        int tier = TIER_FULL;
+        if (!mCharging) {
+            if (mBatteryLevel <= mMinimalLevel) {
+                tier = TIER_MINIMAL;
+            } else if (mBatteryLevel <= mSaverLevel) {
+                tier = TIER_SAVER;
+            } else if (mBatteryLevel <= mBalancedLevel) {
+                tier = TIER_BALANCED;
+            }
+            // high refresh panels wake up more often for the same capped frame rate
+            if (mThrottleHighRefresh && mRefreshRate > DEFAULT_REFRESH_RATE + 1f) {
+                tier = Math.max(tier, TIER_BALANCED);
+            }
+        }
+        // heat matters even on the charger, charging only adds to it
+        if (mTemperature >= mHotDeciC) {
+            tier = TIER_MINIMAL;
+        } else if (mTemperature >= mWarmDeciC) {
+            tier = Math.max(tier, TIER_SAVER);
+        }
+        if (mPowerSaveMode) {
+            tier = Math.max(tier, TIER_SAVER);
+        }
+        return tier;
+    }
+
+    private void update() {
+        final int tier = computeTier();
+        if (tier != mTier) {
+            mTier = tier;
+            mTierChanges++;
+            mCallback.onPowerTierChanged(tier);
+        }
+    }
+
+    private void readBattery(Intent intent) {
+        final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+        if (level >= 0 && scale > 0) {
+            mBatteryLevel = level * 100 / scale;
+        }
+        mCharging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        mTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, mTemperature);
+    }
+}
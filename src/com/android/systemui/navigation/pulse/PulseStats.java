@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Lightweight Pulse telemetry for dumpsys. Everything recorded on the
+ * frame path goes into preallocated primitive counters
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.PrintWriter;
+
+import android.util.SparseArray;
+
+public class PulseStats {
+    /**
+     * Power of two microsecond buckets: bucket 0 is under 1us, bucket n
+     * holds [2^(n-1), 2^n) us and the last bucket holds everything above
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 18;
+
+        private final String mName;
+        private final long[] mBuckets = new long[BUCKETS];
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        public Histogram(String name) {
+            mName = name;
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            final long micros = nanos / 1000;
+            final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            mBuckets[bucket]++;
+            mCount++;
+            mTotalNanos += nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return upper bound in microseconds of the bucket holding the given percentile
+         */
+        public long getPercentileMicros(int percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            final long target = (mCount * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets[i];
+                if (seen >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        void dump(PrintWriter pw, String prefix) {
+            pw.print(prefix);
+            pw.print(mName);
+            pw.print(": n=");
+            pw.print(mCount);
+            if (mCount > 0) {
+                pw.print(" avg=");
+                pw.print(mTotalNanos / mCount / 1000);
+                pw.print("us p50<=");
+                pw.print(getPercentileMicros(50));
+                pw.print("us p90<=");
+                pw.print(getPercentileMicros(90));
+                pw.print("us p99<=");
+                pw.print(getPercentileMicros(99));
+                pw.print("us max=");
+                pw.print(mMaxNanos / 1000);
+                pw.print("us");
+            }
+            pw.println();
+        }
+    }
+
+    public static class RendererStats {
+        final String mName;
+        final Histogram mFFTUpdate = new Histogram("onFFTUpdate");
+        final Histogram mWaveformUpdate = new Histogram("onWaveformUpdate");
+        final Histogram mDraw = new Histogram("draw");
+
+        RendererStats(String name) {
+            mName = name;
+        }
+    }
+
+    final Histogram mFrameLatency = new Histogram("fft-to-draw latency");
+    private final SparseArray<RendererStats> mRendererStats = new SparseArray<RendererStats>();
+
+    long mLinkCount;
+    long mUnlinkCount;
+    long mSilentUnlinkCount;
+    long mStreamValidCount;
+    long mStreamInvalidCount;
+
+    /**
+     * Not for the frame path, may allocate the first time a style is seen
+     */
+    public RendererStats getRendererStats(int style, Renderer renderer) {
+        RendererStats stats = mRendererStats.get(style);
+        if (stats == null) {
+            stats = new RendererStats(renderer.getClass().getSimpleName());
+            mRendererStats.put(style, stats);
+        }
+        return stats;
+    }
+
+    public void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "links=" + mLinkCount + " unlinks=" + mUnlinkCount
+                + " silentUnlinks=" + mSilentUnlinkCount);
+        pw.println(prefix + "stream valid=" + mStreamValidCount
+                + " invalid=" + mStreamInvalidCount);
+        mFrameLatency.dump(pw, prefix);
+        for (int i = 0; i < mRendererStats.size(); i++) {
+            final RendererStats stats = mRendererStats.valueAt(i);
+            pw.println(prefix + "renderer style=" + mRendererStats.keyAt(i)
+                    + " " + stats.mName + ":");
+            stats.mFFTUpdate.dump(pw, prefix + "  ");
+            stats.mWaveformUpdate.dump(pw, prefix + "  ");
+            stats.mDraw.dump(pw, prefix + "  ");
+        }
+    }
+}
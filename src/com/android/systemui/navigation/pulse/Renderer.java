@@ -27,43 +27,119 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.os.Handler;
 
-public abstract class Renderer implements VisualizerStreamHandler.Listener {
+public abstract class Renderer {
     protected Context mContext;
     protected Handler mHandler;
     protected PulseObserver mCallback;
+    protected PulseController mController;
+    private boolean mStackedAbove;
 
-    private static final long ANIM_FPS_MAX = 40;
-    private static final long ANIM_FPS_TO_MILLIS = 1000 / ANIM_FPS_MAX;
-    private long mCurrentTime;
-    private long mRenderCounter;
-    private long mCurrentCounter;
-
-    public Renderer(Context context, Handler handler, PulseObserver callback) {
+    public Renderer(Context context, Handler handler, PulseObserver callback,
+            PulseController controller) {
         mContext = context;
         mHandler = handler;
         mCallback = callback;
-        mRenderCounter = System.currentTimeMillis();
+        mController = controller;
     }
 
+    /**
+     * Request a redraw on the next paced vsync. Safe to call for every
+     * update, requests are coalesced by the PulseFrameScheduler
+     */
     protected final void postInvalidate() {
-        mCurrentTime = System.currentTimeMillis();
-        mCurrentCounter = mCurrentTime - mRenderCounter;
-        if (mCurrentCounter >= ANIM_FPS_TO_MILLIS) {
-            mRenderCounter = mCurrentTime;
-            mCallback.postInvalidate();
-        }
+        mController.getFrameScheduler().requestFrame();
+    }
+
+    /**
+     * Same as postInvalidate() but only the given region of the bar needs redrawing
+     */
+    protected final void postInvalidate(int left, int top, int right, int bottom) {
+        mController.getFrameScheduler().requestFrame(left, top, right, bottom);
     }
 
     public abstract void draw(Canvas canvas);
 
-    @Override
-    public void onWaveFormUpdate(byte[] bytes) {}
+    /**
+     * Set by CompositeRenderer on every layer drawn over another one. Such a
+     * layer must only change its own pixels, and leaves the speed of the
+     * shared lava lamp to the bottom layer
+     */
+    public final void setStackedAbove(boolean stackedAbove) {
+        mStackedAbove = stackedAbove;
+    }
+
+    protected final boolean isStackedAbove() {
+        return mStackedAbove;
+    }
+
+    /**
+     * @return number of FFT bins, counted from bin 0, this renderer reads.
+     *         Used to negotiate the smallest capture size that covers it
+     */
+    public int getRequiredBins() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Call when a settings or size change alters getRequiredBins()
+     */
+    protected final void notifyCaptureRequirementsChanged() {
+        mController.updateCaptureRequirements();
+    }
 
-    @Override
-    public void onFFTUpdate(byte[] fft) {}
+    /**
+     * Called on the main thread once the stream was validated, or given up on
+     */
+    public abstract void onStreamAnalyzed(boolean isValid);
+
+    /**
+     * Called on the main thread with the newest frame the shared FFTProcessor
+     * has converted to dB magnitudes. Renderers should read from here instead
+     * of doing their own magnitude math on the raw bytes. Frames that arrive
+     * while the main thread is busy are coalesced, only the latest is delivered
+     */
+    public void onFFTUpdate(FFTProcessor fft) {}
+
+    /**
+     * Waveform counterpart of onFFTUpdate(FFTProcessor), main thread. Only
+     * called for renderers returning true from needsWaveform()
+     */
+    public void onWaveformUpdate(WaveformBuffer waveform) {}
+
+    /**
+     * @return true if this renderer reads FFT data
+     */
+    public boolean needsFFT() {
+        return true;
+    }
+
+    /**
+     * @return true if this renderer reads waveform data
+     */
+    public boolean needsWaveform() {
+        return false;
+    }
 
     public void onVisualizerLinkChanged(boolean linked) {}
 
+    /**
+     * PulsePowerGovernor moved to another tier. Renderers should thin out
+     * bars by PulsePowerGovernor.getBarDivisor() and only run the lava lamp
+     * if PulsePowerGovernor.allowsLavaLamp()
+     */
+    public void onPowerTierChanged(int tier) {}
+
+    /**
+     * Parked by the RendererRegistry. Stop observing settings and the lava
+     * lamp until onUnpark(), or destroy() if it never comes back
+     */
+    public void onPark() {}
+
+    /**
+     * Back from the RendererRegistry. Settings may have changed while parked
+     */
+    public void onUnpark() {}
+
     public void destroy() {}
 
     public void setLeftInLandscape(boolean leftInLandscape) {}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Map render style ids to renderer factories. Renderers are only built
+ * when first asked for, and the last one switched away from is kept warm
+ * so toggling styles back does not rebuild bitmaps, observers and animators
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import com.android.systemui.R;
+import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+
+public class RendererRegistry {
+    public interface Factory {
+        public Renderer create(Context context, Handler handler, PulseObserver observer,
+                PulseController controller);
+    }
+
+    public static final int RENDER_STYLE_LEGACY = 0;
+    public static final int RENDER_STYLE_CM = 1;
+    public static final int RENDER_STYLE_WAVEFORM = 2;
+    // layers listed in config_pulseStackedLayers, drawn as one style
+    public static final int RENDER_STYLE_STACKED = 3;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final PulseController mController;
+    private final SparseArray<Factory> mFactories = new SparseArray<Factory>();
+
+    // one parked renderer, ready to come back without being rebuilt
+    private Renderer mWarmRenderer;
+    private int mWarmStyle;
+    private PulseObserver mWarmObserver;
+
+    public RendererRegistry(Context context, Handler handler, PulseController controller) {
+        mContext = context;
+        mHandler = handler;
+        mController = controller;
+        register(RENDER_STYLE_LEGACY, new Factory() {
+            @Override
+            public Renderer create(Context context, Handler handler, PulseObserver observer,
+                    PulseController controller) {
+                return new FadingBlockRenderer(context, handler, observer, controller);
+            }
+        });
+        register(RENDER_STYLE_CM, new Factory() {
+            @Override
+            public Renderer create(Context context, Handler handler, PulseObserver observer,
+                    PulseController controller) {
+                return new SolidLineRenderer(context, handler, observer, controller);
+            }
+        });
+        register(RENDER_STYLE_WAVEFORM, new Factory() {
+            @Override
+            public Renderer create(Context context, Handler handler, PulseObserver observer,
+                    PulseController controller) {
+                return new WaveformRenderer(context, handler, observer, controller);
+            }
+        });
+        register(RENDER_STYLE_STACKED, new Factory() {
+            @Override
+            public Renderer create(Context context, Handler handler, PulseObserver observer,
+                    PulseController controller) {
+                final int[] styles = context.getResources()
+                        .getIntArray(R.array.config_pulseStackedLayers);
+                final ArrayList<Renderer> layers = new ArrayList<Renderer>(styles.length);
+                for (int style : styles) {
+                    // layers are always fresh, never the warm renderer
+                    if (style != RENDER_STYLE_STACKED && isRegistered(style)) {
+                        layers.add(mFactories.get(style).create(context, handler, observer,
+                                controller));
+                    }
+                }
+                return new CompositeRenderer(context, handler, observer, controller,
+                        layers.toArray(new Renderer[layers.size()]));
+            }
+        });
+    }
+
+    /**
+     * Add or replace the renderer for a style id
+     */
+    public void register(int style, Factory factory) {
+        mFactories.put(style, factory);
+        if (mWarmRenderer != null && mWarmStyle == style) {
+            clearWarm();
+        }
+    }
+
+    public boolean isRegistered(int style) {
+        return mFactories.get(style) != null;
+    }
+
+    /**
+     * Get a renderer for the style, reusing the warm one if it matches
+     */
+    public Renderer obtain(int style, PulseObserver observer) {
+        if (!isRegistered(style)) {
+            style = RENDER_STYLE_LEGACY;
+        }
+        if (mWarmRenderer != null && mWarmStyle == style && mWarmObserver == observer) {
+            final Renderer renderer = mWarmRenderer;
+            mWarmRenderer = null;
+            mWarmObserver = null;
+            renderer.onUnpark();
+            // the bar may have changed size while we were parked
+            renderer.onSizeChanged(0, 0, 0, 0);
+            return renderer;
+        }
+        return mFactories.get(style).create(mContext, mHandler, observer, mController);
+    }
+
+    /**
+     * Park a renderer that is being switched away from. Whatever was
+     * parked before is destroyed
+     */
+    public void recycle(int style, Renderer renderer, PulseObserver observer) {
+        if (!isRegistered(style)) {
+            style = RENDER_STYLE_LEGACY;
+        }
+        clearWarm();
+        // drop it out of the rendering state so it stops animating while parked
+        renderer.onStreamAnalyzed(false);
+        renderer.onVisualizerLinkChanged(false);
+        renderer.onPark();
+        mWarmRenderer = renderer;
+        mWarmStyle = style;
+        mWarmObserver = observer;
+    }
+
+    /**
+     * Destroy the parked renderer, i.e. when the observing bar goes away
+     */
+    public void clearWarm() {
+        if (mWarmRenderer != null) {
+            mWarmRenderer.destroy();
+            mWarmRenderer = null;
+            mWarmObserver = null;
+        }
+    }
+}
@@ -22,9 +22,9 @@
 
 package com.android.systemui.navigation.pulse;
 
-import android.animation.ValueAnimator;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.Resources;
 import android.database.ContentObserver;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -37,48 +37,64 @@ import android.os.UserHandle;
 import android.provider.Settings;
 
 import com.android.internal.util.NotificationColorUtil;
+import com.android.systemui.R;
 import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
 import com.android.systemui.navigation.utils.ColorAnimator;
 
 public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAnimationListener {
     private Paint mPaint;
     private Paint mFadePaint;
-    private ValueAnimator[] mValueAnimators;
+    private final BarIntegrator mIntegrator = new BarIntegrator();
+    private final BandMap mBandMap = new BandMap();
+    private float[] mBandValues = new float[0];
+    private final int mBandScale;
+    private final int mBandReduction;
+    // index of the animated coordinate of bar 0 in mFFTPoints, stride is 4
+    private int mAnimatedOffset;
     private float[] mFFTPoints;
     private int mColor;
     private int mAlbumColor = -1;
     private boolean mAutoColor;
 
-    private byte rfk, ifk;
     private int dbValue;
-    private float magnitude;
     private float mDbFuzzFactor;
     private boolean mVertical;
     private boolean mLeftInLandscape;
     private int mWidth, mHeight, mUnits;
+    // bar count from settings, mUnits is this thinned out by the power tier
+    private int mUserUnits;
 
     private boolean mIsValidStream;
     private boolean mLavaLampEnabled;
+    private long mLavaLampSpeed = ColorAnimator.ANIM_DEF_DURATION;
+    private int mPowerTier = PulsePowerGovernor.TIER_FULL;
     private CMRendererObserver mObserver;
     private ColorAnimator mLavaLamp;
 
-    private PulseController mController;
-
     public SolidLineRenderer(Context context, Handler handler, PulseObserver callback,
             PulseController controller) {
-        super(context, handler, callback);
-        mController = controller;
+        super(context, handler, callback, controller);
         mColor = Color.TRANSPARENT;
-        mLavaLamp = new ColorAnimator();
-        mLavaLamp.setColorAnimatorListener(this);
+        mLavaLamp = controller.getLavaLamp();
+        mLavaLamp.addColorAnimatorListener(this);
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
         mFadePaint = new Paint();
         mFadePaint.setXfermode(new PorterDuffXfermode(Mode.MULTIPLY));
         mDbFuzzFactor = 5f;
+        final Resources res = context.getResources();
+        mBandScale = res.getInteger(R.integer.config_pulseBandScale);
+        mBandReduction = res.getInteger(R.integer.config_pulseBandReduction);
+        if (res.getBoolean(R.bool.config_pulseSolidUseSpring)) {
+            mIntegrator.setSpring(res.getInteger(R.integer.config_pulseSolidSpringStiffness),
+                    res.getInteger(R.integer.config_pulseSolidSpringDampingPercent) / 100f);
+        } else {
+            mIntegrator.setAttackDecay(res.getInteger(R.integer.config_pulseSolidAttackMillis),
+                    res.getInteger(R.integer.config_pulseSolidDecayMillis));
+        }
         mObserver = new CMRendererObserver(handler);
         mObserver.updateSettings();
-        loadValueAnimators();
+        loadIntegrator();
     }
 
     @Override
@@ -89,30 +105,15 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
         }
     }
 
-    private void loadValueAnimators() {
-        if (mValueAnimators != null) {
-            for (int i = 0; i < mValueAnimators.length; i++) {
-                mValueAnimators[i].cancel();
-            }
+    private void loadIntegrator() {
+        mIntegrator.setCount(mUnits);
+        mIntegrator.reset();
+        mAnimatedOffset = mVertical ? 0 : 1;
+        if (mFFTPoints == null) {
+            return;
         }
-        mValueAnimators = new ValueAnimator[mUnits];
-        final boolean isVertical = mVertical;
         for (int i = 0; i < mUnits; i++) {
-            final int j;
-            if (isVertical) {
-                j = i * 4;
-            } else {
-                j = i * 4 + 1;
-            }
-            mValueAnimators[i] = new ValueAnimator();
-            mValueAnimators[i].setDuration(128);
-            mValueAnimators[i].addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    mFFTPoints[j] = (float) animation.getAnimatedValue();
-                    postInvalidate();
-                }
-            });
+            mIntegrator.snapTo(i, mFFTPoints[i * 4 + mAnimatedOffset]);
         }
     }
 
@@ -148,12 +149,12 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
             mWidth = mCallback.getWidth();
             mHeight = mCallback.getHeight();
             mVertical = mHeight > mWidth;
-            loadValueAnimators();
             if (mVertical) {
                 setVerticalPoints();
             } else {
                 setPortraitPoints();
             }
+            loadIntegrator();
         }
     }
 
@@ -162,46 +163,131 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
         mIsValidStream = isValid;
         if (isValid) {
             onSizeChanged(0, 0, 0, 0);
-            if (mLavaLampEnabled) {
-                mLavaLamp.start();
+            updateLavaLamp();
+        }
+    }
+
+    private void updateLavaLamp() {
+        // the lava lamp is shared between renderers, only the one showing a
+        // stream gets to drive it
+        if (!mIsValidStream) {
+            return;
+        }
+        if (mLavaLampEnabled && PulsePowerGovernor.allowsLavaLamp(mPowerTier)) {
+            // stacked, the bottom layer runs the lamp at one speed for all
+            if (!isStackedAbove()) {
+                mLavaLamp.setAnimationTime(mLavaLampSpeed);
+                if (!mLavaLamp.isRunning()) {
+                    mLavaLamp.start();
+                }
             }
+        } else {
+            if (!isStackedAbove()) {
+                mLavaLamp.stop();
+            }
+            // the tier may block the lamp before it ever ran
+            mPaint.setColor(mAutoColor && mAlbumColor != -1 ? mAlbumColor : mColor);
+        }
+    }
+
+    private void updateUnits() {
+        final int units = Math.max(2, mUserUnits / PulsePowerGovernor.getBarDivisor(mPowerTier));
+        if (mUnits != units) {
+            mUnits = units;
+            mFFTPoints = new float[mUnits * 4];
+            loadIntegrator();
+            onSizeChanged(0, 0, 0, 0);
+            notifyCaptureRequirementsChanged();
+        }
+    }
+
+    @Override
+    public void onPowerTierChanged(int tier) {
+        if (mPowerTier != tier) {
+            mPowerTier = tier;
+            updateUnits();
+            updateLavaLamp();
         }
     }
 
     @Override
-    public void onFFTUpdate(byte[] fft) {
+    public void onFFTUpdate(FFTProcessor fft) {
+        final float[] db = fft.getDbValues();
+        final int bins = fft.getBinCount();
+        final boolean banded = mBandScale != BandMap.SCALE_LINEAR;
+        if (banded) {
+            if (mBandValues.length < mUnits) {
+                mBandValues = new float[mUnits];
+            }
+            mBandMap.update(bins, mUnits, mBandScale);
+            mBandMap.reduce(db, mBandValues, mBandReduction);
+        }
         for (int i = 0; i < mUnits; i++) {
-            mValueAnimators[i].cancel();
-            rfk = fft[i * 2 + 2];
-            ifk = fft[i * 2 + 3];
-            magnitude = rfk * rfk + ifk * ifk;
-            dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
+            if (banded) {
+                dbValue = (int) mBandValues[i];
+            } else {
+                // skip bin 0, it carries DC and Nyquist. Capture size may have
+                // been stepped down below what we asked for
+                dbValue = i + 1 < bins ? (int) db[i + 1] : 0;
+            }
             if (mVertical) {
                 if (mLeftInLandscape) {
-                    mValueAnimators[i].setFloatValues(mFFTPoints[i * 4],
-                            dbValue * mDbFuzzFactor);
+                    mIntegrator.setTarget(i, dbValue * mDbFuzzFactor);
                 } else {
-                    mValueAnimators[i].setFloatValues(mFFTPoints[i * 4],
-                            mFFTPoints[2] - (dbValue * mDbFuzzFactor));
+                    mIntegrator.setTarget(i, mFFTPoints[2] - (dbValue * mDbFuzzFactor));
                 }
             } else {
-                mValueAnimators[i].setFloatValues(mFFTPoints[i * 4 + 1],
-                        mFFTPoints[3] - (dbValue * mDbFuzzFactor));
+                mIntegrator.setTarget(i, mFFTPoints[3] - (dbValue * mDbFuzzFactor));
             }
-            mValueAnimators[i].start();
         }
+        postInvalidate();
+    }
+
+    @Override
+    public int getRequiredBins() {
+        return BandMap.getRequiredBins(mUnits, mBandScale);
     }
 
     @Override
     public void draw(Canvas canvas) {
-        canvas.drawLines(mFFTPoints, mPaint);
-        canvas.drawPaint(mFadePaint);
+        // bars grow toward smaller coordinates unless anchored on the left edge
+        if (mIntegrator.step(System.nanoTime(), !(mVertical && mLeftInLandscape), mFFTPoints,
+                mAnimatedOffset, 4)) {
+            postInvalidate();
+        }
+        if (isStackedAbove()) {
+            // the fade must not darken the layers underneath, so draw and
+            // fade the bars in a layer of their own
+            final int saveCount = canvas.saveLayer(0, 0, mWidth, mHeight, null);
+            canvas.drawLines(mFFTPoints, mPaint);
+            canvas.drawPaint(mFadePaint);
+            canvas.restoreToCount(saveCount);
+        } else {
+            canvas.drawLines(mFFTPoints, mPaint);
+            canvas.drawPaint(mFadePaint);
+        }
+    }
+
+    @Override
+    public void onPark() {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mLavaLamp.removeColorAnimatorListener(this);
+    }
+
+    @Override
+    public void onUnpark() {
+        mObserver.register();
+        mLavaLamp.addColorAnimatorListener(this);
+        mObserver.updateSettings();
     }
 
     @Override
     public void destroy() {
         mContext.getContentResolver().unregisterContentObserver(mObserver);
-        mLavaLamp.stop();
+        mLavaLamp.removeColorAnimatorListener(this);
+        if (mIsValidStream) {
+            mLavaLamp.stop();
+        }
     }
 
     @Override
@@ -283,25 +369,17 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
             int lavaLampSpeed = Settings.Secure.getIntForUser(resolver,
                     Settings.Secure.PULSE_LAVALAMP_SOLID_SPEED, 10 * 1000,
                     UserHandle.USER_CURRENT);
-            mLavaLamp.setAnimationTime(lavaLampSpeed);
-            if (mLavaLampEnabled && mIsValidStream) {
-                mLavaLamp.start();
-            } else {
-                mLavaLamp.stop();
-            }
+            mLavaLampSpeed = lavaLampSpeed;
+            updateLavaLamp();
             // putFloat, getFloat is better. catch it next time
             mDbFuzzFactor = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_SOLID_FUDGE_FACTOR, 5,
                     UserHandle.USER_CURRENT);
 
-            int oldUnits = mUnits;
-            mUnits = Settings.Secure.getIntForUser(
+            mUserUnits = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_SOLID_UNITS_COUNT, 64,
                     UserHandle.USER_CURRENT);
-            if (mUnits != oldUnits) {
-                mFFTPoints = new float[mUnits * 4];
-                onSizeChanged(0, 0, 0, 0);
-            }
+            updateUnits();
 
             int solidUnitsColor = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_SOLID_UNITS_OPACITY, 200,
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Decide if a capture stream carries real audio from a cheap energy
+ * estimate over a few sampled bins instead of scanning every byte.
+ * Loud frames are accepted right away, quiet but non silent frames
+ * must show up a few times in a row
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+public class StreamValidator {
+    public static final int RESULT_PENDING = 0;
+    public static final int RESULT_VALID = 1;
+
+    private final int mSamples;
+    private final int mMinEnergy;
+    private final int mEarlyAcceptEnergy;
+    private final int mRequiredFrames;
+
+    private int mConsecutiveFrames;
+    private long mLastEnergy;
+
+    /**
+     * @param samples - number of bins sampled per frame
+     * @param minEnergy - average rfk^2 + ifk^2 per sampled bin for a frame to count as non silent
+     * @param earlyAcceptEnergy - average energy at which a single frame is enough
+     * @param requiredFrames - consecutive non silent frames needed otherwise
+     */
+    public StreamValidator(int samples, int minEnergy, int earlyAcceptEnergy,
+            int requiredFrames) {
+        mSamples = Math.max(1, samples);
+        mMinEnergy = Math.max(1, minEnergy);
+        mEarlyAcceptEnergy = Math.max(mMinEnergy, earlyAcceptEnergy);
+        mRequiredFrames = Math.max(1, requiredFrames);
+    }
+
+    public void reset() {
+        mConsecutiveFrames = 0;
+        mLastEnergy = 0;
+    }
+
+    /**
+     * @param data - raw FFT capture, two bytes per bin
+     * @return RESULT_VALID once the stream is accepted, RESULT_PENDING otherwise
+     */
+    public int onFrame(byte[] data) {
+        final int bins = data.length / 2;
+        if (bins == 0) {
+            mConsecutiveFrames = 0;
+            return RESULT_PENDING;
+        }
+        final int stride = Math.max(1, bins / mSamples);
+        long energy = 0;
+        int sampled = 0;
+        int rfk, ifk;
+        for (int k = 0; k < bins; k += stride) {
+            rfk = data[k * 2];
+            ifk = data[k * 2 + 1];
+            energy += rfk * rfk + ifk * ifk;
+            sampled++;
+        }
+        return accept(energy, sampled);
+    }
+
+    /**
+     * Same as onFrame() for waveform captures, used when FFT capture is off
+     *
+     * @param data - 8 bit unsigned PCM, 128 is silence
+     */
+    public int onWaveformFrame(byte[] data) {
+        if (data.length == 0) {
+            mConsecutiveFrames = 0;
+            return RESULT_PENDING;
+        }
+        final int stride = Math.max(1, data.length / mSamples);
+        long energy = 0;
+        int sampled = 0;
+        int sample;
+        for (int i = 0; i < data.length; i += stride) {
+            sample = (data[i] & 0xff) - 128;
+            energy += sample * sample;
+            sampled++;
+        }
+        return accept(energy, sampled);
+    }
+
+    private int accept(long energy, int sampled) {
+        mLastEnergy = energy / sampled;
+
+        // compare sums so a few weak bins are not rounded away
+        if (energy >= (long) mEarlyAcceptEnergy * sampled) {
+            return RESULT_VALID;
+        }
+        if (energy >= (long) mMinEnergy * sampled) {
+            mConsecutiveFrames++;
+        } else {
+            mConsecutiveFrames = 0;
+        }
+        return mConsecutiveFrames >= mRequiredFrames ? RESULT_VALID : RESULT_PENDING;
+    }
+
+    /**
+     * @return average energy per sampled bin of the last frame
+     */
+    public long getLastEnergy() {
+        return mLastEnergy;
+    }
+}
@@ -16,45 +16,93 @@
  * limitations under the License.
  *
  * Control state of visualizer link, stream validation, and the flow
- * of data to listener
+ * of data to listener. Captures are delivered on a dedicated analysis
+ * thread so audio bursts never compete with the main Looper
  *
  */
 
 package com.android.systemui.navigation.pulse;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.media.audiofx.Visualizer;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Message;
 import android.util.Log;
 
+import com.android.systemui.R;
+
 public class VisualizerStreamHandler {
     public interface Listener {
+        // called on the main thread
         public void onStreamAnalyzed(boolean isValid);
 
+        // called on the analysis thread. The Visualizer reuses the array
         public void onFFTUpdate(byte[] bytes);
 
+        // called on the analysis thread. The Visualizer reuses the array
         public void onWaveFormUpdate(byte[] bytes);
     }
 
     protected static final String TAG = VisualizerStreamHandler.class.getSimpleName();
-    protected static final boolean ENABLE_WAVEFORM = false;
-
     protected static final int MSG_STREAM_VALID = 55;
     protected static final int MSG_STREAM_INVALID = 56;
-    // we have 6 seconds to get three consecutive valid frames
+    // we have 6 seconds for the StreamValidator to accept the stream
     protected static final int VALIDATION_TIME_MILLIS = 6000;
-    protected static final int VALID_BYTES_THRESHOLD = 3;
 
+    // capture rate (fraction of max) and capture size reduction for each quality step
+    private static final float[] CAPTURE_RATE_STEPS = { 0.75f, 0.5f, 0.5f, 0.33f };
+    private static final int[] CAPTURE_SIZE_SHIFT_STEPS = { 0, 0, 1, 1 };
+    // frames over (or well under) budget before changing quality step
+    private static final int BUDGET_WINDOW_FRAMES = 30;
+
+    // only touched on the analysis thread
     protected Visualizer mVisualizer;
     protected int mAudioSessionId;
+    private int mPendingSessionId;
+    private boolean mVisualizerLocked;
+    private final long mUnlinkDebounceMillis;
+    private final long mIdleTtlMillis;
+    private int mAppliedCaptureSize;
+    private int mAppliedCaptureRate;
+    private boolean mAppliedFFT;
+    private boolean mAppliedWaveform;
+
+    // negotiated capture config, written on the main thread
+    private volatile int mCaptureSize;
+    private volatile int mCaptureRate;
+    // which captures the active renderer asked for, toggled without relinking
+    private volatile boolean mCaptureFFT = true;
+    private volatile boolean mCaptureWaveform;
+    private int mRequiredBins = Integer.MAX_VALUE;
+    private int mQualityStep;
+    // floor set by the power governor, adaptive stepping stays at or above it
+    private int mMinQualityStep;
+    private final long mFrameBudgetNanos;
+    private long mAvgFrameNanos;
+    private int mOverBudgetFrames;
+    private int mUnderBudgetFrames;
 
-    // manage stream validation
-    protected int mConsecutiveFrames;
-    protected boolean mIsValidated;
-    protected boolean mIsAnalyzed;
-    protected boolean mIsPrepared;
-    protected boolean mIsPaused;
+    // manage stream validation. Written on the main thread only, the
+    // analysis thread just reads them
+    private long mLinkTimeNanos;
+    private volatile long mLastValidationMillis = -1;
+    protected volatile boolean mIsValidated;
+    protected volatile boolean mIsPaused;
+    // false while a paused Visualizer is kept alive after unlink()
+    private volatile boolean mIsLinked;
+    // bumped on every link, unlink and reset. Validation results carry the
+    // one they were analyzed under so a late result is dropped
+    private volatile int mLinkGeneration;
+    // a VALID or INVALID result was taken for the current generation
+    private boolean mIsResolved;
+
+    // validation state of the analysis thread, for mAnalyzedGeneration only
+    protected final StreamValidator mValidator;
+    private int mAnalyzedGeneration = -1;
+    private boolean mIsAnalyzed;
+    private boolean mIsPrepared;
 
     protected Context mContext;
     protected PulseController mController;
@@ -63,103 +111,358 @@ public class VisualizerStreamHandler {
     private Handler mHandler = new Handler() {
         @Override
         public void handleMessage(Message m) {
+            if (!mIsLinked || m.arg1 != mLinkGeneration || mIsResolved) {
+                return;
+            }
             switch (m.what) {
                 case MSG_STREAM_VALID:
-                    mIsAnalyzed = true;
+                    mIsResolved = true;
                     mIsValidated = true;
-                    mIsPrepared = false;
+                    // nothing newer than this generation can be queued
+                    mHandler.removeMessages(MSG_STREAM_INVALID);
+                    mLastValidationMillis = (System.nanoTime() - mLinkTimeNanos) / 1000000;
                     mListener.onStreamAnalyzed(true);
                     break;
                 case MSG_STREAM_INVALID:
-                    mIsAnalyzed = true;
+                    mIsResolved = true;
                     mIsValidated = false;
-                    mIsPrepared = false;
                     mListener.onStreamAnalyzed(false);
                     break;
             }
         }
     };
 
+    private final HandlerThread mAnalysisThread;
+    private final Handler mAnalysisHandler;
+
+    private final Runnable mLinkRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doLink(mPendingSessionId);
+        }
+    };
+
+    private final Runnable mUnlinkRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doUnlink();
+        }
+    };
+
+    private final Runnable mReleaseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doRelease();
+        }
+    };
+
+    private final Runnable mReconfigureRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doReconfigure();
+        }
+    };
+
+    private final Visualizer.OnDataCaptureListener mCaptureListener =
+            new Visualizer.OnDataCaptureListener() {
+        @Override
+        public void onWaveFormDataCapture(Visualizer visualizer, byte[] bytes,
+                int samplingRate) {
+            if (mCaptureWaveform && mIsLinked) {
+                // only validate on waveform when there is no fft to do it
+                if (!mCaptureFFT) {
+                    analyze(bytes, true);
+                }
+                if (isValidStream() && !mIsPaused) {
+                    mListener.onWaveFormUpdate(bytes);
+                }
+            }
+        }
+
+        @Override
+        public void onFftDataCapture(Visualizer visualizer, byte[] bytes,
+                int samplingRate) {
+            if (!mIsLinked || !mCaptureFFT) {
+                return;
+            }
+            analyze(bytes, false);
+            if (isValidStream() && !mIsPaused) {
+                mListener.onFFTUpdate(bytes);
+            }
+        }
+    };
+
     public VisualizerStreamHandler(Context context, PulseController controller,
             VisualizerStreamHandler.Listener listener) {
         mContext = context;
         mController = controller;
         mListener = listener;
+        mAnalysisThread = new HandlerThread(TAG);
+        mAnalysisThread.start();
+        mAnalysisHandler = new Handler(mAnalysisThread.getLooper());
+        final Resources res = context.getResources();
+        mFrameBudgetNanos = res.getInteger(R.integer.config_pulseFrameBudgetMicros) * 1000L;
+        mUnlinkDebounceMillis = res.getInteger(R.integer.config_pulseUnlinkDebounceMillis);
+        mIdleTtlMillis = res.getInteger(R.integer.config_pulseVisualizerIdleTtlMillis);
+        mValidator = new StreamValidator(
+                res.getInteger(R.integer.config_pulseValidationSamples),
+                res.getInteger(R.integer.config_pulseValidationMinEnergy),
+                res.getInteger(R.integer.config_pulseValidationEarlyAcceptEnergy),
+                res.getInteger(R.integer.config_pulseValidationRequiredFrames));
+        updateCaptureConfig();
+    }
+
+    /**
+     * Tell the handler how many FFT bins the active renderer actually reads.
+     * Capture size is negotiated down to the smallest size that covers it
+     *
+     * @param bins - number of bins needed, starting from bin 0
+     */
+    public void setRequiredBins(int bins) {
+        if (mRequiredBins != bins) {
+            mRequiredBins = bins;
+            updateCaptureConfig();
+        }
     }
 
     /**
-     * Links the visualizer to a player
+     * Report how long the last frame took to render. Sustained frames over
+     * budget step capture rate and size down, sustained frames well under
+     * budget step them back up
+     *
+     * @param frameNanos - renderer update plus draw time of one frame
+     */
+    public void onFrameRendered(long frameNanos) {
+        mAvgFrameNanos += (frameNanos - mAvgFrameNanos) >> 3;
+        if (mAvgFrameNanos > mFrameBudgetNanos) {
+            mUnderBudgetFrames = 0;
+            if (++mOverBudgetFrames >= BUDGET_WINDOW_FRAMES
+                    && mQualityStep < CAPTURE_RATE_STEPS.length - 1) {
+                mOverBudgetFrames = 0;
+                mQualityStep++;
+                updateCaptureConfig();
+            }
+        } else if (mAvgFrameNanos < mFrameBudgetNanos / 2) {
+            mOverBudgetFrames = 0;
+            if (++mUnderBudgetFrames >= BUDGET_WINDOW_FRAMES * 4
+                    && mQualityStep > mMinQualityStep) {
+                mUnderBudgetFrames = 0;
+                mQualityStep--;
+                updateCaptureConfig();
+            }
+        } else {
+            mOverBudgetFrames = 0;
+            mUnderBudgetFrames = 0;
+        }
+    }
+
+    /**
+     * Keep capture rate and size at or below the given quality step no
+     * matter how fast frames render
+     */
+    public void setMinQualityStep(int step) {
+        step = Math.max(0, Math.min(CAPTURE_RATE_STEPS.length - 1, step));
+        if (mMinQualityStep != step) {
+            mMinQualityStep = step;
+            if (mQualityStep < step) {
+                mQualityStep = step;
+            }
+            mOverBudgetFrames = 0;
+            mUnderBudgetFrames = 0;
+            updateCaptureConfig();
+        }
+    }
+
+    /**
+     * Choose which captures are delivered. Applied to a live Visualizer
+     * without relinking. At least one of them stays enabled
+     */
+    public void setCaptureModes(boolean fft, boolean waveform) {
+        if (!fft && !waveform) {
+            fft = true;
+        }
+        if (fft != mCaptureFFT || waveform != mCaptureWaveform) {
+            mCaptureFFT = fft;
+            mCaptureWaveform = waveform;
+            mAnalysisHandler.post(mReconfigureRunnable);
+        }
+    }
+
+    public int getCaptureSize() {
+        return mCaptureSize;
+    }
+
+    public int getCaptureRate() {
+        return mCaptureRate;
+    }
+
+    public int getQualityStep() {
+        return mQualityStep;
+    }
+
+    private void updateCaptureConfig() {
+        final int[] range = Visualizer.getCaptureSizeRange();
+        // two bytes per bin
+        int size = range[1];
+        if (mRequiredBins < range[1] / 2) {
+            size = Integer.highestOneBit(Math.max(1, mRequiredBins * 2 - 1)) << 1;
+        }
+        size >>= CAPTURE_SIZE_SHIFT_STEPS[mQualityStep];
+        size = Math.max(range[0], Math.min(range[1], size));
+        final int rate = (int) (Visualizer.getMaxCaptureRate()
+                * CAPTURE_RATE_STEPS[mQualityStep]);
+        if (size != mCaptureSize || rate != mCaptureRate) {
+            mCaptureSize = size;
+            mCaptureRate = rate;
+            mAnalysisHandler.post(mReconfigureRunnable);
+        }
+    }
+
+    /**
+     * Links the visualizer to a player. The Visualizer is created on the
+     * analysis thread so its capture callbacks are delivered there. If a
+     * paused Visualizer for the same session is still alive it is simply
+     * enabled again
      * 
-     * @param player - MediaPlayer instance to link to
+     * @param audioSessionId - audio session to link to
      */
     public final void link(int audioSessionId) {
+        pause();
+        resetAnalyzer();
+        mLinkTimeNanos = System.nanoTime();
+        mPendingSessionId = audioSessionId;
+        mIsLinked = true;
+        // a pending unlink inside the debounce window never happens
+        mAnalysisHandler.removeCallbacks(mUnlinkRunnable);
+        mAnalysisHandler.removeCallbacks(mReleaseRunnable);
+        mAnalysisHandler.post(mLinkRunnable);
+    }
+
+    /**
+     * Stop delivering data. The Visualizer is disabled after a short debounce
+     * and only released once it has been idle for the configured TTL
+     */
+    public final void unlink() {
+        mIsLinked = false;
+        pause();
+        resetAnalyzer();
+        mAnalysisHandler.removeCallbacks(mLinkRunnable);
+        mAnalysisHandler.removeCallbacks(mUnlinkRunnable);
+        mAnalysisHandler.postDelayed(mUnlinkRunnable, mUnlinkDebounceMillis);
+    }
+
+    private void doLink(int audioSessionId) {
         if (mVisualizer != null && audioSessionId != mAudioSessionId) {
             mVisualizer.setEnabled(false);
             mVisualizer.release();
             mVisualizer = null;
         }
-        pause();
-        resetAnalyzer();
         mAudioSessionId = audioSessionId;
+        setVisualizerLocked(true);
 
         if (mVisualizer == null) {
             try {
                 mVisualizer = new Visualizer(audioSessionId);
             } catch (Exception e) {
                 Log.e(TAG, "Error enabling visualizer!", e);
+                setVisualizerLocked(false);
                 return;
             }
             mVisualizer.setEnabled(false);
-            mVisualizer.setCaptureSize(Visualizer.getCaptureSizeRange()[1]);
-
-            Visualizer.OnDataCaptureListener captureListener = new Visualizer.OnDataCaptureListener() {
-                @Override
-                public void onWaveFormDataCapture(Visualizer visualizer, byte[] bytes,
-                        int samplingRate) {
-                    if (ENABLE_WAVEFORM) {
-                        analyze(bytes);
-                        if (isValidStream() && !mIsPaused) {
-                            mListener.onWaveFormUpdate(bytes);
-                        }
-                    }
-                }
-
-                @Override
-                public void onFftDataCapture(Visualizer visualizer, byte[] bytes,
-                        int samplingRate) {
-                    analyze(bytes);
-                    if (isValidStream() && !mIsPaused) {
-                        mListener.onFFTUpdate(bytes);
-                    }
-                }
-            };
-
-            mVisualizer.setDataCaptureListener(captureListener,
-                    (int) (Visualizer.getMaxCaptureRate() * 0.75), ENABLE_WAVEFORM, true);
+            mAppliedCaptureSize = 0;
+            mAppliedCaptureRate = 0;
+            applyCaptureConfig(mCaptureSize);
+        }
+        if (!mVisualizer.getEnabled()) {
+            mVisualizer.setEnabled(true);
+        }
+    }
 
+    private void doUnlink() {
+        if (mVisualizer != null) {
+            mVisualizer.setEnabled(false);
+            mAnalysisHandler.postDelayed(mReleaseRunnable, mIdleTtlMillis);
         }
-        mVisualizer.setEnabled(true);
+        setVisualizerLocked(false);
     }
 
-    public final void unlink() {
+    private void doRelease() {
         if (mVisualizer != null) {
-            pause();
             mVisualizer.setEnabled(false);
             mVisualizer.release();
             mVisualizer = null;
-            resetAnalyzer();
+        }
+    }
+
+    // binder call, skip it when the lock state would not change
+    private void setVisualizerLocked(boolean locked) {
+        if (mVisualizerLocked != locked) {
+            mVisualizerLocked = locked;
+            PulseController.setVisualizerLocked(locked);
+        }
+    }
+
+    private void doReconfigure() {
+        if (mVisualizer == null) {
+            return;
+        }
+        if (mAppliedCaptureSize == mCaptureSize && mAppliedCaptureRate == mCaptureRate
+                && mAppliedFFT == mCaptureFFT && mAppliedWaveform == mCaptureWaveform) {
+            return;
+        }
+        final int size = mCaptureSize;
+        if (mAppliedCaptureSize == size) {
+            // rate and capture modes apply to a running Visualizer
+            applyCaptureConfig(size);
+            return;
+        }
+        final boolean enabled = mVisualizer.getEnabled();
+        // capture size can only be changed while disabled
+        mVisualizer.setEnabled(false);
+        applyCaptureConfig(size);
+        mVisualizer.setEnabled(enabled);
+    }
+
+    private void applyCaptureConfig(int size) {
+        final int rate = mCaptureRate;
+        final boolean fft = mCaptureFFT;
+        final boolean waveform = mCaptureWaveform;
+        if (mAppliedCaptureSize != size) {
+            mVisualizer.setCaptureSize(size);
+            mAppliedCaptureSize = size;
+        }
+        if (mAppliedCaptureRate != rate || mAppliedFFT != fft || mAppliedWaveform != waveform) {
+            // registering from this thread binds the callbacks to its Looper
+            mVisualizer.setDataCaptureListener(mCaptureListener, rate, waveform, fft);
+            mAppliedCaptureRate = rate;
+            mAppliedFFT = fft;
+            mAppliedWaveform = waveform;
         }
     }
 
     public boolean isValidStream() {
-        return mIsAnalyzed && mIsValidated;
+        return mIsValidated;
     }
 
+    /**
+     * Start validation over. The analysis thread resets its own state on the
+     * first frame it sees under the new generation
+     */
     public void resetAnalyzer() {
-        mIsAnalyzed = false;
         mIsValidated = false;
-        mIsPrepared = false;
-        mConsecutiveFrames = 0;
+        mIsResolved = false;
+        // anything sent after this carries a generation that is either
+        // current or gets dropped
+        mHandler.removeMessages(MSG_STREAM_VALID);
+        mHandler.removeMessages(MSG_STREAM_INVALID);
+        mLinkGeneration++;
+    }
+
+    /**
+     * @return time from the last link() to the stream being validated, -1 if never validated
+     */
+    public long getLastValidationMillis() {
+        return mLastValidationMillis;
     }
 
     public void pause() {
@@ -170,36 +473,33 @@ public class VisualizerStreamHandler {
         mIsPaused = false;
     }
 
-    private void analyze(byte[] data) {
+    // analysis thread
+    private void analyze(byte[] data, boolean waveform) {
+        final int generation = mLinkGeneration;
+        if (generation != mAnalyzedGeneration) {
+            mAnalyzedGeneration = generation;
+            mIsAnalyzed = false;
+            mIsPrepared = false;
+            mValidator.reset();
+        }
         if (mIsAnalyzed) {
             return;
         }
 
         if (!mIsPrepared) {
-            mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_STREAM_INVALID),
+            mHandler.sendMessageDelayed(
+                    mHandler.obtainMessage(MSG_STREAM_INVALID, generation, 0),
                     VALIDATION_TIME_MILLIS);
             mIsPrepared = true;
         }
 
-        if (isDataEmpty(data)) {
-            mConsecutiveFrames = 0;
-        } else {
-            mConsecutiveFrames++;
-        }
-
-        if (mConsecutiveFrames == VALID_BYTES_THRESHOLD) {
-            mIsPaused = true;
-            mHandler.removeMessages(MSG_STREAM_INVALID);
-            mHandler.sendEmptyMessage(MSG_STREAM_VALID);
-        }
-    }
-
-    private boolean isDataEmpty(byte[] data) {
-        for (int i = 0; i < data.length; i++) {
-            if (data[i] != 0) {
-                return false;
-            }
+        final int result = waveform ? mValidator.onWaveformFrame(data)
+                : mValidator.onFrame(data);
+        if (result == StreamValidator.RESULT_VALID) {
+            // done for this generation. The main thread cancels the timeout
+            // and resumes delivery once it takes the result
+            mIsAnalyzed = true;
+            mHandler.sendMessage(mHandler.obtainMessage(MSG_STREAM_VALID, generation, 0));
         }
-        return true;
     }
 }
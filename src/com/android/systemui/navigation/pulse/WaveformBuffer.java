@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Single producer, single consumer ring of waveform samples. The analysis
+ * thread copies each capture in (the Visualizer reuses its array), the
+ * main thread reads the newest capture straight out of the ring while
+ * downsampling it, so no per frame arrays are created
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class WaveformBuffer {
+    // captures the ring can hold. The reader only touches the newest one, so
+    // the writer needs to lap the ring during a single read to tear it
+    private static final int CAPTURES_PER_RING = 4;
+
+    private byte[] mRing = new byte[0];
+    private int mMask;
+    // total samples ever written, the ring index is mWritten & mMask
+    private volatile long mWritten;
+    private volatile int mCaptureLength;
+    private final AtomicBoolean mNotifyPending = new AtomicBoolean();
+
+    /**
+     * Writer side. Copy a capture into the ring
+     *
+     * @return true if the reader must be notified, false if a notification is
+     *         already pending
+     */
+    public boolean write(byte[] capture) {
+        final int length = capture.length;
+        if (mRing.length < length * CAPTURES_PER_RING) {
+            // capture size grew, only happens on reconfigure
+            mRing = new byte[Integer.highestOneBit(length * CAPTURES_PER_RING - 1) << 1];
+            mMask = mRing.length - 1;
+            mWritten = 0;
+        }
+        final int start = (int) (mWritten & mMask);
+        final int first = Math.min(length, mRing.length - start);
+        System.arraycopy(capture, 0, mRing, start, first);
+        if (first < length) {
+            System.arraycopy(capture, first, mRing, 0, length - first);
+        }
+        mCaptureLength = length;
+        mWritten += length;
+        return mNotifyPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Reader side. Call before reading so the next write notifies again
+     */
+    public void onNotified() {
+        mNotifyPending.set(false);
+    }
+
+    /**
+     * Reader side. Downsample the newest capture into min/max pairs per column
+     *
+     * @param minOut - receives the lowest centered sample (-128..127) of each column
+     * @param maxOut - receives the highest centered sample of each column
+     * @param columns - number of columns to produce
+     * @return false if nothing has been written yet
+     */
+    public boolean downsample(float[] minOut, float[] maxOut, int columns) {
+        final byte[] ring = mRing;
+        final int length = mCaptureLength;
+        final long written = mWritten;
+        if (length == 0 || written < length || columns == 0 || ring.length < length) {
+            return false;
+        }
+        final int mask = ring.length - 1;
+        final long start = written - length;
+        for (int c = 0; c < columns; c++) {
+            final int from = (int) ((long) c * length / columns);
+            final int to = Math.max(from + 1, (int) ((long) (c + 1) * length / columns));
+            int min = 127;
+            int max = -128;
+            for (int i = from; i < to; i++) {
+                // 8 bit unsigned PCM, 128 is silence
+                final int sample = (ring[(int) ((start + i) & mask)] & 0xff) - 128;
+                if (sample < min) {
+                    min = sample;
+                }
+                if (sample > max) {
+                    max = sample;
+                }
+            }
+            minOut[c] = min;
+            maxOut[c] = max;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Oscilloscope style renderer. Draws the min/max envelope of the newest
+ * waveform capture, one short line per pixel column pair
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.UserHandle;
+import android.provider.Settings;
+import android.util.TypedValue;
+
+import com.android.internal.util.NotificationColorUtil;
+import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
+import com.android.systemui.navigation.utils.ColorAnimator;
+
+public class WaveformRenderer extends Renderer implements ColorAnimator.ColorAnimationListener {
+    // width of one envelope column
+    private static final float COLUMN_DP = 2f;
+    private static final float STROKE_DP = 1.5f;
+
+    private Paint mPaint;
+    private float[] mPoints = new float[0];
+    private float[] mMin = new float[0];
+    private float[] mMax = new float[0];
+    private int mColumns;
+    private float mColumnSize;
+    private final float mBaseColumnSize;
+    private int mWidth;
+    private int mHeight;
+    private boolean mVertical;
+    private boolean mLeftInLandscape;
+
+    private int mColor;
+    private int mAlbumColor = -1;
+    private boolean mAutoColor;
+    private boolean mLavaLampEnabled;
+    private long mLavaLampSpeed = ColorAnimator.ANIM_DEF_DURATION;
+    private int mPowerTier = PulsePowerGovernor.TIER_FULL;
+    private boolean mIsValidStream;
+    private ColorAnimator mLavaLamp;
+    private WaveformSettingsObserver mObserver;
+
+    public WaveformRenderer(Context context, Handler handler, PulseObserver callback,
+            PulseController controller) {
+        super(context, handler, callback, controller);
+        mLavaLamp = controller.getLavaLamp();
+        mLavaLamp.addColorAnimatorListener(this);
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+        mPaint.setStrokeWidth(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, STROKE_DP,
+                context.getResources().getDisplayMetrics()));
+        mBaseColumnSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, COLUMN_DP,
+                context.getResources().getDisplayMetrics());
+        mColumnSize = mBaseColumnSize;
+        mObserver = new WaveformSettingsObserver(handler);
+        mObserver.updateSettings();
+        onSizeChanged(0, 0, 0, 0);
+    }
+
+    @Override
+    public boolean needsFFT() {
+        return false;
+    }
+
+    @Override
+    public boolean needsWaveform() {
+        return true;
+    }
+
+    @Override
+    public int getRequiredBins() {
+        // capture size is two bytes per bin, one sample per byte. Ask for
+        // at least one sample per column
+        return mColumns == 0 ? super.getRequiredBins() : mColumns / 2 + 1;
+    }
+
+    @Override
+    public void onSizeChanged(int w, int h, int oldw, int oldh) {
+        if (mCallback.getWidth() > 0 && mCallback.getHeight() > 0) {
+            mWidth = mCallback.getWidth();
+            mHeight = mCallback.getHeight();
+            mVertical = mHeight > mWidth;
+            mColumns = Math.max(1, (int) ((mVertical ? mHeight : mWidth) / mColumnSize));
+            if (mMin.length < mColumns) {
+                mMin = new float[mColumns];
+                mMax = new float[mColumns];
+                mPoints = new float[mColumns * 4];
+            }
+            notifyCaptureRequirementsChanged();
+        }
+    }
+
+    @Override
+    public void onPowerTierChanged(int tier) {
+        if (mPowerTier != tier) {
+            mPowerTier = tier;
+            // wider columns, fewer lines
+            mColumnSize = mBaseColumnSize * PulsePowerGovernor.getBarDivisor(tier);
+            onSizeChanged(0, 0, 0, 0);
+            updateLavaLamp();
+        }
+    }
+
+    @Override
+    public void setLeftInLandscape(boolean leftInLandscape) {
+        mLeftInLandscape = leftInLandscape;
+    }
+
+    @Override
+    public void onStreamAnalyzed(boolean isValid) {
+        mIsValidStream = isValid;
+        if (isValid) {
+            onSizeChanged(0, 0, 0, 0);
+            updateLavaLamp();
+        }
+    }
+
+    private void updateLavaLamp() {
+        // the lava lamp is shared between renderers, only the one showing a
+        // stream gets to drive it
+        if (!mIsValidStream) {
+            return;
+        }
+        if (mLavaLampEnabled && PulsePowerGovernor.allowsLavaLamp(mPowerTier)) {
+            // stacked, the bottom layer runs the lamp at one speed for all
+            if (!isStackedAbove()) {
+                mLavaLamp.setAnimationTime(mLavaLampSpeed);
+                if (!mLavaLamp.isRunning()) {
+                    mLavaLamp.start();
+                }
+            }
+        } else {
+            if (!isStackedAbove()) {
+                mLavaLamp.stop();
+            }
+            // the tier may block the lamp before it ever ran
+            mPaint.setColor(mAutoColor && mAlbumColor != -1 ? mAlbumColor : mColor);
+        }
+    }
+
+    @Override
+    public void onWaveformUpdate(WaveformBuffer waveform) {
+        if (mColumns == 0 || !waveform.downsample(mMin, mMax, mColumns)) {
+            return;
+        }
+        final float center = (mVertical ? mWidth : mHeight) / 2f;
+        final float scale = center / 128f;
+        for (int c = 0; c < mColumns; c++) {
+            final float pos = c * mColumnSize + mColumnSize / 2f;
+            // keep at least a pixel so silence still draws a flat line
+            float lo = center - mMax[c] * scale;
+            float hi = center - mMin[c] * scale;
+            if (hi - lo < 1f) {
+                hi = lo + 1f;
+            }
+            if (mVertical) {
+                if (!mLeftInLandscape) {
+                    // mirror so the top of the wave faces the screen
+                    final float tmp = lo;
+                    lo = mWidth - hi;
+                    hi = mWidth - tmp;
+                }
+                mPoints[c * 4] = lo;
+                mPoints[c * 4 + 1] = pos;
+                mPoints[c * 4 + 2] = hi;
+                mPoints[c * 4 + 3] = pos;
+            } else {
+                mPoints[c * 4] = pos;
+                mPoints[c * 4 + 1] = lo;
+                mPoints[c * 4 + 2] = pos;
+                mPoints[c * 4 + 3] = hi;
+            }
+        }
+        postInvalidate();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        canvas.drawLines(mPoints, 0, mColumns * 4, mPaint);
+    }
+
+    @Override
+    public void onPark() {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mLavaLamp.removeColorAnimatorListener(this);
+    }
+
+    @Override
+    public void onUnpark() {
+        mObserver.register();
+        mLavaLamp.addColorAnimatorListener(this);
+        mObserver.updateSettings();
+    }
+
+    @Override
+    public void destroy() {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mLavaLamp.removeColorAnimatorListener(this);
+        if (mIsValidStream) {
+            mLavaLamp.stop();
+        }
+    }
+
+    @Override
+    public void onVisualizerLinkChanged(boolean linked) {
+        if (!linked) {
+            mLavaLamp.stop();
+        }
+    }
+
+    @Override
+    public void onColorChanged(ColorAnimator colorAnimator, int color) {
+        mPaint.setColor(color);
+    }
+
+    @Override
+    public void onStartAnimation(ColorAnimator colorAnimator, int firstColor) {
+    }
+
+    @Override
+    public void onStopAnimation(ColorAnimator colorAnimator, int lastColor) {
+        mPaint.setColor(mAutoColor && mAlbumColor != -1 ? mAlbumColor : mColor);
+    }
+
+    @Override
+    public void setColors(boolean colorizedMedia, int[] colors) {
+        if (colorizedMedia) {
+            // be sure the color will always have an acceptable contrast against black navbar
+            mAlbumColor = NotificationColorUtil.findContrastColorAgainstDark(colors[0], 0x000000, true, 2);
+            // now be sure the color will always have an acceptable contrast against white navbar
+            mAlbumColor = NotificationColorUtil.findContrastColor(mAlbumColor, 0xffffff, true, 2);
+        } else {
+            mAlbumColor = -1;
+        }
+        if (mAutoColor && !mLavaLampEnabled) {
+            mPaint.setColor(mAlbumColor != -1 ? mAlbumColor : mColor);
+            mController.setLastColor(mAlbumColor);
+        }
+    }
+
+    private class WaveformSettingsObserver extends ContentObserver {
+        public WaveformSettingsObserver(Handler handler) {
+            super(handler);
+            register();
+        }
+
+        void register() {
+            ContentResolver resolver = mContext.getContentResolver();
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_COLOR), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED), false,
+                    this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_SPEED), false,
+                    this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.PULSE_AUTO_COLOR), false, this,
+                    UserHandle.USER_ALL);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            updateSettings();
+        }
+
+        public void updateSettings() {
+            ContentResolver resolver = mContext.getContentResolver();
+
+            mAutoColor = Settings.Secure.getIntForUser(
+                    resolver, Settings.Secure.PULSE_AUTO_COLOR, 0,
+                    UserHandle.USER_CURRENT) == 1;
+
+            mLavaLampEnabled = !mAutoColor && Settings.Secure.getIntForUser(resolver,
+                    Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED, 1, UserHandle.USER_CURRENT) == 1;
+
+            mColor = Settings.Secure.getIntForUser(resolver,
+                    Settings.Secure.FLING_PULSE_COLOR,
+                    Color.WHITE,
+                    UserHandle.USER_CURRENT);
+            if (!mLavaLampEnabled) {
+                int lastColor = mController.getAlbumArtColor();
+                mPaint.setColor(mAutoColor && lastColor != -1 ? lastColor : mColor);
+            }
+            int time = Settings.Secure.getIntForUser(resolver,
+                    Settings.Secure.FLING_PULSE_LAVALAMP_SPEED, 10000,
+                    UserHandle.USER_CURRENT);
+            mLavaLampSpeed = time;
+            updateLavaLamp();
+        }
+    }
+}
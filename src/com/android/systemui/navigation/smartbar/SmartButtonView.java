@@ -25,6 +25,7 @@ import com.android.internal.utils.du.ActionHandler;
 import com.android.internal.utils.du.Config.ActionConfig;
 import com.android.internal.utils.du.Config.ButtonConfig;
 import com.android.systemui.navigation.Res;
+import com.android.systemui.navigation.utils.GestureTimerWheel;
 import com.facebook.rebound.Spring;
 import com.facebook.rebound.SpringConfig;
 import com.facebook.rebound.SpringListener;
@@ -77,6 +78,9 @@ public class SmartButtonView extends ImageView {
     private ObjectAnimator mFlipAnim = null;
     private ButtonConfig mConfig;
     private SmartBarView mHost;
+    // deadlines live on the shared gesture timer wheel, not the view's handler
+    private final GestureTimerWheel.Timer mDoubleTapTimer;
+    private final GestureTimerWheel.Timer mLongPressTimer;
 
     private boolean mIsRippleEnabled;
 
@@ -125,6 +129,18 @@ public class SmartButtonView extends ImageView {
         setClickable(true);
         setLongClickable(false);
         mAudioManager = getAudioManager(context);
+        final GestureTimerWheel wheel = GestureTimerWheel.getInstance();
+        mDoubleTapTimer = wheel.newTimer(mDoubleTapTimeout);
+        mLongPressTimer = wheel.newTimer(mCheckLongPress);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // timers outlive the view, don't fire actions for a button that's gone
+        mDoubleTapTimer.cancel();
+        mLongPressTimer.cancel();
+        isDoubleTapPending = false;
     }
 
     public void setHost(SmartBarView host) {
@@ -359,7 +375,7 @@ public class SmartButtonView extends ImageView {
                 } else if (isDoubleTapPending) {
                     isDoubleTapPending = false;
                     wasConsumed = true;
-                    removeCallbacks(mDoubleTapTimeout);
+                    mDoubleTapTimer.cancel();
                     doDoubleTap();
                 } else {
                     wasConsumed = false;
@@ -367,16 +383,15 @@ public class SmartButtonView extends ImageView {
                         ActionHandler.preloadRecentApps();
                     }
                     if (hasLongAction()) {
-                        removeCallbacks(mCheckLongPress);
-                        postDelayed(mCheckLongPress, sLongPressTimeout);
+                        mLongPressTimer.schedule(sLongPressTimeout);
                     }
                 }
                 break;
             case MotionEvent.ACTION_CANCEL:
                 if (hasLongAction()) {
-                    removeCallbacks(mCheckLongPress);
+                    mLongPressTimer.cancel();
                 }
-                removeCallbacks(mDoubleTapTimeout);
+                mDoubleTapTimer.cancel();
                 wasConsumed = true;
                 isDoubleTapPending = false;
                 setPressed(false); // this will stop also the ime arrows handler
@@ -397,7 +412,7 @@ public class SmartButtonView extends ImageView {
                     mSpring.setEndValue(0f);
                 }
                 if (hasLongAction()) {
-                    removeCallbacks(mCheckLongPress);
+                    mLongPressTimer.cancel();
                 }
                 if (hasDoubleAction()) {
                     if (wasConsumed) {
@@ -405,7 +420,7 @@ public class SmartButtonView extends ImageView {
                         return true;
                     }
                     isDoubleTapPending = true;
-                    postDelayed(mDoubleTapTimeout, sDoubleTapTimeout);
+                    mDoubleTapTimer.schedule(sDoubleTapTimeout);
                 } else {
                     if (!imeLeft && !imeRight && !wasConsumed && hasSingleAction()) {
                         doSinglePress();
@@ -477,7 +492,7 @@ public class SmartButtonView extends ImageView {
             if (isPressed()) {
                 wasConsumed = true;
                 isDoubleTapPending = false;
-                removeCallbacks(mDoubleTapTimeout);
+                mDoubleTapTimer.cancel();
                 doLongPress();
             }
         }
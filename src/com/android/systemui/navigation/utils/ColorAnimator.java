@@ -16,6 +16,11 @@
  * limitations under the License.
  * 
  * Produce a smooth HSV color wheel type animation much like a LavaLamp
+ *
+ * The HSV walk is baked into a fixed size color ramp when the animation
+ * starts, so frames only index into it. Several listeners can share one
+ * animator, they are all fed from the same update and only when the color
+ * actually changes
  * 
  */
 
@@ -24,6 +29,8 @@ package com.android.systemui.navigation.utils;
 import android.animation.ValueAnimator;
 import android.graphics.Color;
 
+import java.util.ArrayList;
+
 public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
     public interface ColorAnimationListener {
         public void onColorChanged(ColorAnimator colorAnimator, int color);
@@ -34,6 +41,8 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
     public static final int ANIM_DEF_DURATION = 10 * 1000;
     public static final String RED = "#ffff8080";
     public static final String BLUE = "#ff8080ff";
+    // colors baked between the two end points
+    public static final int RAMP_SIZE = 256;
 
     protected final float[] from = new float[3], to = new float[3], hsv = new float[3];
 
@@ -43,8 +52,15 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
     protected int mToColor = Color.parseColor(BLUE);
     protected int mLastColor = Color.parseColor(RED);
     protected boolean mIsRunning;
+    protected final int[] mRamp = new int[RAMP_SIZE];
+    protected int mRampFromColor;
+    protected int mRampToColor;
+    protected boolean mRampValid;
 
-    protected  ColorAnimationListener mListener;
+    protected final ArrayList<ColorAnimationListener> mListeners =
+            new ArrayList<ColorAnimationListener>();
+    // snapshot of mListeners walked on every frame
+    protected ColorAnimationListener[] mListenerArray = new ColorAnimationListener[0];
 
     public ColorAnimator() {
         this(ValueAnimator.ofFloat(0, 1));
@@ -69,13 +85,13 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
 
     public void start() {
         stop();
-        Color.colorToHSV(mFromColor, from);
-        Color.colorToHSV(mToColor, to);
+        buildRamp();
         mColorAnim.setDuration(mAnimTime);
         mColorAnim.setRepeatMode(ValueAnimator.REVERSE);
         mColorAnim.setRepeatCount(ValueAnimator.INFINITE);
-        if (mListener != null) {
-            mListener.onStartAnimation(this, mFromColor);
+        final ColorAnimationListener[] listeners = mListenerArray;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onStartAnimation(this, mFromColor);
         }
         mColorAnim.start();
         mIsRunning = true;
@@ -85,12 +101,32 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
         if (mColorAnim.isStarted()) {
             mColorAnim.end();
             mIsRunning = false;
-            if (mListener != null) {
-                mListener.onStopAnimation(this, mLastColor);
+            final ColorAnimationListener[] listeners = mListenerArray;
+            for (int i = 0; i < listeners.length; i++) {
+                listeners[i].onStopAnimation(this, mLastColor);
             }
         }
     }
 
+    private void buildRamp() {
+        if (mRampValid && mRampFromColor == mFromColor && mRampToColor == mToColor) {
+            return;
+        }
+        Color.colorToHSV(mFromColor, from);
+        Color.colorToHSV(mToColor, to);
+        for (int i = 0; i < RAMP_SIZE; i++) {
+            // Transition along each axis of HSV (hue, saturation, value)
+            final float fraction = (float) i / (RAMP_SIZE - 1);
+            hsv[0] = from[0] + (to[0] - from[0]) * fraction;
+            hsv[1] = from[1] + (to[1] - from[1]) * fraction;
+            hsv[2] = from[2] + (to[2] - from[2]) * fraction;
+            mRamp[i] = Color.HSVToColor(hsv);
+        }
+        mRampFromColor = mFromColor;
+        mRampToColor = mToColor;
+        mRampValid = true;
+    }
+
     public boolean isRunning() {
         return mIsRunning;
     }
@@ -104,24 +140,40 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
         }
     }
 
+    /**
+     * Replace all listeners with this one
+     */
     public void setColorAnimatorListener(ColorAnimationListener listener) {
-        mListener = listener;
+        mListeners.clear();
+        addColorAnimatorListener(listener);
+    }
+
+    /**
+     * Share this animator with another listener
+     */
+    public void addColorAnimatorListener(ColorAnimationListener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+        mListenerArray = mListeners.toArray(new ColorAnimationListener[mListeners.size()]);
     }
 
     public void removeColorAnimatorListener(ColorAnimationListener listener) {
-        mListener = null;
+        mListeners.remove(listener);
+        mListenerArray = mListeners.toArray(new ColorAnimationListener[mListeners.size()]);
     }
 
     public void onAnimationUpdate(ValueAnimator animation) {
-        // Transition along each axis of HSV (hue, saturation, value)
-        hsv[0] = from[0] + (to[0] - from[0]) * animation.getAnimatedFraction();
-        hsv[1] = from[1] + (to[1] - from[1]) * animation.getAnimatedFraction();
-        hsv[2] = from[2] + (to[2] - from[2]) * animation.getAnimatedFraction();
-
-        mLastColor = Color.HSVToColor(hsv);
+        final int color = mRamp[(int) (animation.getAnimatedFraction() * (RAMP_SIZE - 1) + 0.5f)];
+        if (color == mLastColor) {
+            // ramp steps are coarser than frames, nothing to tell anyone
+            return;
+        }
+        mLastColor = color;
 
-        if (mListener != null) {
-            mListener.onColorChanged(this, mLastColor);
+        final ColorAnimationListener[] listeners = mListenerArray;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onColorChanged(this, color);
         }
     }
 
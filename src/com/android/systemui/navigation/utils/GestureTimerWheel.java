@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * One timer wheel for all navigation bar tap, long press and double tap
+ * deadlines. Owners create their Timer once and re-arm it on every touch,
+ * timers are linked straight into the wheel slots so arming and cancelling
+ * never allocates. A single callback is kept posted for the earliest
+ * deadline and only moves when a sooner one is armed. Records how late
+ * each timer fired compared to its deadline. Not thread safe, use from
+ * the wheel's Looper
+ *
+ */
+
+package com.android.systemui.navigation.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+public class GestureTimerWheel {
+    // 8ms slots, 128 of them, so one turn covers about a second. Longer
+    // deadlines just get looked at again on the next turn
+    private static final int TICK_SHIFT = 3;
+    private static final int SLOTS = 128;
+    private static final int MASK = SLOTS - 1;
+    // slot index of the list of timers being fired
+    private static final int FIRING = -1;
+    private static final int IDLE = -2;
+
+    // upper bounds, in ms, of the jitter histogram buckets. Last bucket is open
+    private static final int[] JITTER_BOUNDS = { 0, 2, 4, 8, 16, 32 };
+
+    private static GestureTimerWheel sInstance;
+
+    private final Handler mHandler;
+    private final Timer[] mSlots = new Timer[SLOTS];
+    // expired timers waiting for their turn to run
+    private Timer mFiring;
+    // first tick not yet walked
+    private long mCurrentTick;
+    private int mArmed;
+    private long mWakeAt = Long.MAX_VALUE;
+
+    private long mFired;
+    private long mJitterSum;
+    private long mJitterMax;
+    private final long[] mJitterHistogram = new long[JITTER_BOUNDS.length + 1];
+    private long mWakeups;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+
+    /**
+     * A reusable deadline. Running it from the wheel is the same as posting
+     * the runnable at the deadline
+     */
+    public static final class Timer {
+        private final GestureTimerWheel mWheel;
+        private final Runnable mAction;
+        private Timer mNext;
+        private Timer mPrev;
+        private int mSlot = IDLE;
+        private long mTick;
+        private long mDeadline;
+
+        private Timer(GestureTimerWheel wheel, Runnable action) {
+            mWheel = wheel;
+            mAction = action;
+        }
+
+        /**
+         * Arm, or re-arm, the timer delay ms from now
+         */
+        public void schedule(long delayMillis) {
+            mWheel.arm(this, SystemClock.uptimeMillis() + delayMillis);
+        }
+
+        /**
+         * Arm, or re-arm, the timer at an uptimeMillis based time
+         */
+        public void scheduleAt(long uptimeMillis) {
+            mWheel.arm(this, uptimeMillis);
+        }
+
+        public void cancel() {
+            mWheel.disarm(this);
+        }
+
+        public boolean isPending() {
+            return mSlot != IDLE;
+        }
+    }
+
+    /**
+     * @return the wheel shared by everything on the main thread
+     */
+    public static GestureTimerWheel getInstance() {
+        if (sInstance == null) {
+            sInstance = new GestureTimerWheel(Looper.getMainLooper());
+        }
+        return sInstance;
+    }
+
+    public GestureTimerWheel(Looper looper) {
+        mHandler = new Handler(looper);
+    }
+
+    public Looper getLooper() {
+        return mHandler.getLooper();
+    }
+
+    public Timer newTimer(Runnable action) {
+        return new Timer(this, action);
+    }
+
+    public void dump(PrintWriter pw, String prefix) {
+        pw.print(prefix + "gestureTimers armed=" + mArmed + " fired=" + mFired
+                + " wakeups=" + mWakeups
+                + " jitterAvg=" + (mFired == 0 ? 0 : mJitterSum / mFired) + "ms"
+                + " jitterMax=" + mJitterMax + "ms histogram=[");
+        for (int i = 0; i < mJitterHistogram.length; i++) {
+            if (i > 0) {
+                pw.print(" ");
+            }
+            pw.print((i < JITTER_BOUNDS.length ? "<=" + JITTER_BOUNDS[i] : ">"
+                    + JITTER_BOUNDS[i - 1]) + ":" + mJitterHistogram[i]);
+        }
+        pw.println("]");
+    }
+
+    private void arm(Timer t, long deadline) {
+        unlink(t);
+        if (mArmed == 0) {
+            // wheel was idle, catch the cursor up without walking dead slots
+            mCurrentTick = SystemClock.uptimeMillis() >> TICK_SHIFT;
+        }
+        t.mDeadline = deadline;
+        t.mTick = Math.max(deadline >> TICK_SHIFT, mCurrentTick);
+        link(t, (int) (t.mTick & MASK));
+        mArmed++;
+        if (deadline < mWakeAt) {
+            wakeAt(deadline);
+        }
+    }
+
+    private void disarm(Timer t) {
+        unlink(t);
+        if (mArmed == 0 && mWakeAt != Long.MAX_VALUE) {
+            mHandler.removeCallbacks(mTick);
+            mWakeAt = Long.MAX_VALUE;
+        }
+    }
+
+    private void link(Timer t, int slot) {
+        final Timer head = slot == FIRING ? mFiring : mSlots[slot];
+        t.mSlot = slot;
+        t.mPrev = null;
+        t.mNext = head;
+        if (head != null) {
+            head.mPrev = t;
+        }
+        if (slot == FIRING) {
+            mFiring = t;
+        } else {
+            mSlots[slot] = t;
+        }
+    }
+
+    private void unlink(Timer t) {
+        if (t.mSlot == IDLE) {
+            return;
+        }
+        if (t.mNext != null) {
+            t.mNext.mPrev = t.mPrev;
+        }
+        if (t.mPrev != null) {
+            t.mPrev.mNext = t.mNext;
+        } else if (t.mSlot == FIRING) {
+            mFiring = t.mNext;
+        } else {
+            mSlots[t.mSlot] = t.mNext;
+        }
+        if (t.mSlot != FIRING) {
+            mArmed--;
+        }
+        t.mNext = t.mPrev = null;
+        t.mSlot = IDLE;
+    }
+
+    private void wakeAt(long when) {
+        mHandler.removeCallbacks(mTick);
+        mHandler.postAtTime(mTick, when);
+        mWakeAt = when;
+    }
+
+    private void onTick() {
+        mWakeAt = Long.MAX_VALUE;
+        mWakeups++;
+        final long now = SystemClock.uptimeMillis();
+        final long nowTick = now >> TICK_SHIFT;
+        // every slot passed since the last tick, but never more than one turn
+        final long lastTick = Math.min(nowTick, mCurrentTick + MASK);
+        for (long tick = mCurrentTick; tick <= lastTick && mArmed > 0; tick++) {
+            Timer t = mSlots[(int) (tick & MASK)];
+            while (t != null) {
+                final Timer next = t.mNext;
+                if (t.mDeadline <= now) {
+                    unlink(t);
+                    link(t, FIRING);
+                }
+                t = next;
+            }
+        }
+        mCurrentTick = nowTick;
+        // run them off their own list, actions are free to arm or cancel
+        // any timer, this one and the ones still waiting included
+        while (mFiring != null) {
+            final Timer t = mFiring;
+            unlink(t);
+            recordJitter(now - t.mDeadline);
+            t.mAction.run();
+        }
+        scheduleNext();
+    }
+
+    private void scheduleNext() {
+        if (mArmed == 0) {
+            return;
+        }
+        for (long tick = mCurrentTick; tick < mCurrentTick + SLOTS; tick++) {
+            long earliest = Long.MAX_VALUE;
+            for (Timer t = mSlots[(int) (tick & MASK)]; t != null; t = t.mNext) {
+                if (t.mTick == tick && t.mDeadline < earliest) {
+                    earliest = t.mDeadline;
+                }
+            }
+            if (earliest != Long.MAX_VALUE) {
+                // an action may already have armed something sooner
+                if (earliest < mWakeAt) {
+                    wakeAt(earliest);
+                }
+                return;
+            }
+        }
+        // everything is more than a turn away, come back for the next one
+        final long nextTurn = (mCurrentTick + SLOTS) << TICK_SHIFT;
+        if (nextTurn < mWakeAt) {
+            wakeAt(nextTurn);
+        }
+    }
+
+    private void recordJitter(long jitter) {
+        if (jitter < 0) {
+            jitter = 0;
+        }
+        mFired++;
+        mJitterSum += jitter;
+        mJitterMax = Math.max(mJitterMax, jitter);
+        int bucket = 0;
+        while (bucket < JITTER_BOUNDS.length && jitter > JITTER_BOUNDS[bucket]) {
+            bucket++;
+        }
+        mJitterHistogram[bucket]++;
+    }
+}
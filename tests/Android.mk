@@ -0,0 +1,22 @@
+LOCAL_PATH:= $(call my-dir)
+
+include $(CLEAR_VARS)
+
+# Host side JVM tests for the navigation classes that have no Android
+# dependencies. Run with:
+#   java -cp $(ANDROID_HOST_OUT)/framework/NavigationHostTests.jar \
+#       org.junit.runner.JUnitCore <test class>
+
+NAV_SRC := ../src/com/android/systemui/navigation
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src) \
+    $(NAV_SRC)/pulse/LinkStateMachine.java \
+    $(NAV_SRC)/pulse/PulseLinkage.java
+
+LOCAL_STATIC_JAVA_LIBRARIES := junit-host
+
+LOCAL_MODULE_TAGS := tests
+
+LOCAL_MODULE := NavigationHostTests
+
+include $(BUILD_HOST_JAVA_LIBRARY)
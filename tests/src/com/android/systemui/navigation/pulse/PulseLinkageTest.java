@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Replay linkage event storms through PulseLinkage with a callback that
+ * stands in for PulseController's Handler: a scheduled evaluation runs
+ * when the test closes the window
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PulseLinkageTest {
+    private static final int LINKABLE = LinkStateMachine.FLAG_PULSE_ENABLED
+            | LinkStateMachine.FLAG_SCREEN_ON | LinkStateMachine.FLAG_MEDIA_PLAYING;
+
+    private PulseLinkage mLinkage;
+    private boolean mScheduled;
+    private int mScheduledEvaluations;
+    private long mLastDelayMillis;
+    private int mLinks;
+    private int mUnlinks;
+    private int mSilentUnlinks;
+
+    private final PulseLinkage.Callback mCallback = new PulseLinkage.Callback() {
+        @Override
+        public void scheduleEvaluation(long delayMillis) {
+            mScheduled = true;
+            mScheduledEvaluations++;
+            mLastDelayMillis = delayMillis;
+        }
+
+        @Override
+        public void cancelEvaluation() {
+            mScheduled = false;
+        }
+
+        @Override
+        public void onLink() {
+            mLinks++;
+        }
+
+        @Override
+        public void onUnlink(boolean silent) {
+            if (silent) {
+                mSilentUnlinks++;
+            } else {
+                mUnlinks++;
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mLinkage = new PulseLinkage(mCallback);
+        mScheduled = false;
+        mScheduledEvaluations = 0;
+        mLastDelayMillis = 0;
+        mLinks = 0;
+        mUnlinks = 0;
+        mSilentUnlinks = 0;
+    }
+
+    // the scheduled evaluation firing at the end of the window
+    private void closeWindow() {
+        if (mScheduled) {
+            mLinkage.evaluate();
+        }
+    }
+
+    private void makeLinkable() {
+        mLinkage.setInput(LinkStateMachine.FLAG_PULSE_ENABLED, true);
+        mLinkage.setInput(LinkStateMachine.FLAG_SCREEN_ON, true);
+        mLinkage.setInput(LinkStateMachine.FLAG_MEDIA_PLAYING, true);
+    }
+
+    @Test
+    public void inputsWithinOneWindowLinkOnce() {
+        makeLinkable();
+        assertEquals(1, mScheduledEvaluations);
+        assertEquals(PulseLinkage.WINDOW_MILLIS, mLastDelayMillis);
+        assertFalse(mLinkage.isLinked());
+        closeWindow();
+        assertFalse(mScheduled);
+        assertTrue(mLinkage.isLinked());
+        assertEquals(1, mLinks);
+        assertEquals(LINKABLE, mLinkage.getState().getFlags());
+    }
+
+    @Test
+    public void volumeStormCoalescesToOneEvaluation() {
+        makeLinkable();
+        closeWindow();
+        // holding a volume key through zero and back
+        for (int i = 0; i < 200; i++) {
+            mLinkage.setInput(LinkStateMachine.FLAG_MUSIC_MUTED, i % 2 == 0);
+        }
+        assertEquals(2, mScheduledEvaluations);
+        assertEquals(203, mLinkage.getState().getEventCount());
+        closeWindow();
+        // ends unmuted, nothing to do
+        assertTrue(mLinkage.isLinked());
+        assertEquals(1, mLinks);
+        assertEquals(0, mUnlinks);
+        assertEquals(2, mLinkage.getState().getEvaluationCount());
+    }
+
+    @Test
+    public void stormEndingBlockedUnlinksOnce() {
+        makeLinkable();
+        closeWindow();
+        for (int i = 0; i < 50; i++) {
+            mLinkage.setInput(LinkStateMachine.FLAG_MUSIC_MUTED, true);
+            mLinkage.setInput(LinkStateMachine.FLAG_KEYGUARD_SHOWING, i % 3 == 0);
+            mLinkage.setInput(LinkStateMachine.FLAG_MUSIC_MUTED, false);
+        }
+        mLinkage.setInput(LinkStateMachine.FLAG_POWER_SAVE, true);
+        closeWindow();
+        assertFalse(mLinkage.isLinked());
+        assertEquals(1, mUnlinks);
+        assertEquals(0, mSilentUnlinks);
+        assertEquals(2, mLinkage.getState().getEvaluationCount());
+    }
+
+    @Test
+    public void unchangedInputsDoNotEvaluate() {
+        makeLinkable();
+        closeWindow();
+        for (int i = 0; i < 20; i++) {
+            mLinkage.setInput(LinkStateMachine.FLAG_MEDIA_PLAYING, true);
+            mLinkage.setInput(LinkStateMachine.FLAG_MUSIC_MUTED, false);
+        }
+        assertFalse(mScheduled);
+        assertEquals(1, mScheduledEvaluations);
+    }
+
+    @Test
+    public void deferredInputWaitsForNextEvaluation() {
+        makeLinkable();
+        closeWindow();
+        // PulseController.setScreenPinningState()
+        mLinkage.setDeferredInput(LinkStateMachine.FLAG_SCREEN_PINNING, true);
+        assertFalse(mScheduled);
+        assertTrue(mLinkage.isLinked());
+        // PulseController.notifyScreenOn()
+        mLinkage.setDeferredInput(LinkStateMachine.FLAG_SCREEN_ON, true);
+        mLinkage.requestEvaluation();
+        closeWindow();
+        assertFalse(mLinkage.isLinked());
+        assertEquals(1, mUnlinks);
+    }
+
+    @Test
+    public void repeatedScreenOnRelinksAfterSilentUnlink() {
+        makeLinkable();
+        closeWindow();
+        // invalid stream
+        mLinkage.unlink(true);
+        assertFalse(mLinkage.isLinked());
+        assertEquals(1, mSilentUnlinks);
+        assertEquals(0, mUnlinks);
+        // PulseController.notifyScreenOn() with the screen already on
+        mLinkage.setDeferredInput(LinkStateMachine.FLAG_SCREEN_ON, true);
+        mLinkage.requestEvaluation();
+        closeWindow();
+        assertTrue(mLinkage.isLinked());
+        assertEquals(2, mLinks);
+    }
+
+    @Test
+    public void unlinkWhileUnlinkedDoesNothing() {
+        makeLinkable();
+        mLinkage.unlink(false);
+        mLinkage.unlink(true);
+        assertEquals(0, mUnlinks);
+        assertEquals(0, mSilentUnlinks);
+        closeWindow();
+        mLinkage.unlink(false);
+        mLinkage.unlink(false);
+        assertEquals(1, mUnlinks);
+    }
+
+    @Test
+    public void eachWindowDecidesFromItsLastState() {
+        makeLinkable();
+        closeWindow();
+        final int[][] windows = {
+            // flag, on, ... per window
+            { LinkStateMachine.FLAG_SCREEN_ON, 0, LinkStateMachine.FLAG_SCREEN_ON, 1 },
+            { LinkStateMachine.FLAG_SCREEN_ON, 0 },
+            { LinkStateMachine.FLAG_MEDIA_PLAYING, 0, LinkStateMachine.FLAG_SCREEN_ON, 1 },
+            { LinkStateMachine.FLAG_MEDIA_PLAYING, 1 },
+        };
+        final boolean[] linkedAfter = { true, false, false, true };
+        for (int w = 0; w < windows.length; w++) {
+            for (int i = 0; i < windows[w].length; i += 2) {
+                mLinkage.setInput(windows[w][i], windows[w][i + 1] != 0);
+            }
+            closeWindow();
+            assertEquals("window " + w, linkedAfter[w], mLinkage.isLinked());
+        }
+        assertEquals(2, mLinks);
+        assertEquals(1, mUnlinks);
+        assertEquals(5, mLinkage.getState().getEvaluationCount());
+    }
+}